@@ -0,0 +1,115 @@
+package io.fineo.schema.store;
+
+import io.fineo.schema.Record;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading an encoded record by the user's field names: creating the translator for each
+ * record, either directly or from a {@link AvroRecordTranslatorFactory}, and reading each of the
+ * record's fields from the {@link AvroRecordTranslator#getTranslatedRecord() translated record}
+ * by name or by iterating them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BenchmarkAvroRecordTranslator {
+
+  private static final int RECORDS_PER_METRIC = 1000;
+  private static final int RECORDS = RECORDS_PER_METRIC * BenchmarkData.METRIC_COUNT;
+
+  private SchemaStore store;
+  private GenericRecord[] records;
+  private String[][] fieldNames;
+  private Record[] translated;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchmarkData data = BenchmarkData.create(RECORDS_PER_METRIC);
+    this.store = data.getStore();
+    this.records = data.getEncodedRecords();
+    this.fieldNames = data.getFieldNames();
+    this.translated = new Record[records.length];
+    for (int i = 0; i < records.length; i++) {
+      translated[i] = new AvroRecordTranslator(records[i], store).getTranslatedRecord();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void translate(Blackhole hole) {
+    for (GenericRecord record : records) {
+      hole.consume(new AvroRecordTranslator(record, store).getTranslatedRecord());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void translateWithFactory(Blackhole hole) {
+    AvroRecordTranslatorFactory factory = new AvroRecordTranslatorFactory(store);
+    for (GenericRecord record : records) {
+      hole.consume(factory.getTranslator(record).getTranslatedRecord());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void getFields(Blackhole hole) {
+    for (int i = 0; i < translated.length; i++) {
+      Record record = translated[i];
+      for (String field : fieldNames[i]) {
+        hole.consume(record.getField(field));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void iterateFields(Blackhole hole) {
+    for (Record record : translated) {
+      for (Map.Entry<String, Object> field : record.getFields()) {
+        hole.consume(field.getValue());
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void translateAndGetFields(Blackhole hole) {
+    for (int i = 0; i < records.length; i++) {
+      Record record = new AvroRecordTranslator(records[i], store).getTranslatedRecord();
+      for (String field : fieldNames[i]) {
+        hole.consume(record.getField(field));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void translateWithFactoryAndGetFields(Blackhole hole) {
+    AvroRecordTranslatorFactory factory = new AvroRecordTranslatorFactory(store);
+    for (int i = 0; i < records.length; i++) {
+      Record record = factory.getTranslator(records[i]).getTranslatedRecord();
+      for (String field : fieldNames[i]) {
+        hole.consume(record.getField(field));
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package io.fineo.schema.store;
+
+import io.fineo.schema.Record;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding a single record: finding the encoder for the record's metric with
+ * {@link AvroSchemaEncoderFactory#getEncoder(Record)} and then building the Avro record with
+ * {@link AvroSchemaEncoder#encode()}. Also compares the two ways of getting the record's bytes:
+ * writing the encoded record with a {@link GenericDatumWriter} and encoding straight to bytes with
+ * {@link AvroSchemaEncoder#encode(org.apache.avro.io.Encoder)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BenchmarkAvroSchemaEncoder {
+
+  private static final int RECORDS_PER_METRIC = 1000;
+  private static final int RECORDS = RECORDS_PER_METRIC * BenchmarkData.METRIC_COUNT;
+
+  private Record[] records;
+  private AvroSchemaEncoderFactory factory;
+  private AvroSchemaEncoder[] encoders;
+  private final GenericDatumWriter<GenericData.Record> writer = new GenericDatumWriter<>();
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+  private BinaryEncoder out;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchmarkData data = BenchmarkData.create(RECORDS_PER_METRIC);
+    this.records = data.getRecords();
+    this.factory = data.getClerk().getEncoderFactory();
+    this.encoders = new AvroSchemaEncoder[records.length];
+    for (int i = 0; i < records.length; i++) {
+      encoders[i] = factory.getEncoder(records[i]);
+    }
+    this.out = EncoderFactory.get().binaryEncoder(bytes, null);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void getEncoder(Blackhole hole) throws Exception {
+    for (Record record : records) {
+      hole.consume(factory.getEncoder(record));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void encode(Blackhole hole) {
+    for (AvroSchemaEncoder encoder : encoders) {
+      hole.consume(encoder.encode());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void getEncoderAndEncode(Blackhole hole) throws Exception {
+    for (Record record : records) {
+      hole.consume(factory.getEncoder(record).encode());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void encodeAndWrite(Blackhole hole) throws IOException {
+    for (AvroSchemaEncoder encoder : encoders) {
+      bytes.reset();
+      GenericData.Record record = encoder.encode();
+      writer.setSchema(record.getSchema());
+      writer.write(record, out);
+      out.flush();
+      hole.consume(bytes.size());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void encodeToBytes(Blackhole hole) throws IOException {
+    for (AvroSchemaEncoder encoder : encoders) {
+      bytes.reset();
+      hole.consume(encoder.encode(out));
+      out.flush();
+      hole.consume(bytes.size());
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package io.fineo.schema.store;
+
+import io.fineo.schema.MapRecord;
+import io.fineo.schema.Record;
+import org.apache.avro.generic.GenericRecord;
+import org.schemarepo.InMemoryRepository;
+import org.schemarepo.ValidatorFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Records for a few metrics that look like common system measurements, backed by an in-memory
+ * schema repository so the benchmarks can run without any external services. Records are
+ * interleaved across the metrics, as they would arrive from a stream, and generated from a fixed
+ * seed so every run sees the same data.
+ */
+public class BenchmarkData {
+
+  public static final String ORG = "org";
+  public static final int METRIC_COUNT = 3;
+
+  private static final String[] HOSTS = {"web-1", "web-2", "web-3", "db-1", "db-2"};
+
+  private final SchemaStore store;
+  private final StoreClerk clerk;
+  private final Record[] records;
+  private final String[][] fieldNames;
+  private final GenericRecord[] encoded;
+
+  private BenchmarkData(SchemaStore store, List<Map<String, Object>> maps) throws Exception {
+    this.store = store;
+    this.clerk = new StoreClerk(store, ORG);
+    this.records = new Record[maps.size()];
+    this.fieldNames = new String[maps.size()][];
+    this.encoded = new GenericRecord[maps.size()];
+    AvroSchemaEncoderFactory factory = clerk.getEncoderFactory();
+    for (int i = 0; i < maps.size(); i++) {
+      Map<String, Object> map = maps.get(i);
+      records[i] = new MapRecord(map);
+      StoreClerk.Metric metric = clerk.getMetricForUserNameOrAlias(
+        (String) map.get(AvroSchemaProperties.ORG_METRIC_TYPE_KEY));
+      fieldNames[i] = map.keySet().stream()
+                         .filter(name -> !AvroSchemaProperties.IS_BASE_FIELD.test(name))
+                         .filter(name -> metric.getCanonicalNameFromUserFieldName(name) != null)
+                         .toArray(String[]::new);
+      encoded[i] = factory.getEncoder(records[i]).encode();
+    }
+  }
+
+  /**
+   * @param recordsPerMetric number of records to create for each of the {@link #METRIC_COUNT}
+   *                         metrics
+   */
+  public static BenchmarkData create(int recordsPerMetric) throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY));
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(ORG)
+           .newMetric().setDisplayName("cpu")
+           .newField().withName("host").withType(StoreManager.Type.STRING)
+           .withAliases(Arrays.asList("hostname")).build()
+           .newField().withName("user").withType(StoreManager.Type.DOUBLE).build()
+           .newField().withName("system").withType(StoreManager.Type.DOUBLE).build()
+           .newField().withName("idle").withType(StoreManager.Type.DOUBLE).build()
+           .build()
+           .newMetric().setDisplayName("memory")
+           .newField().withName("host").withType(StoreManager.Type.STRING).build()
+           .newField().withName("used").withType(StoreManager.Type.LONG).build()
+           .newField().withName("free").withType(StoreManager.Type.LONG).build()
+           .build()
+           .newMetric().setDisplayName("requests")
+           .newField().withName("host").withType(StoreManager.Type.STRING).build()
+           .newField().withName("path").withType(StoreManager.Type.STRING).build()
+           .newField().withName("status").withType(StoreManager.Type.INTEGER).build()
+           .newField().withName("bytes").withType(StoreManager.Type.LONG).build()
+           .newField().withName("latency").withType(StoreManager.Type.FLOAT).build()
+           .newField().withName("cached").withType(StoreManager.Type.BOOLEAN).build()
+           .build()
+           .commit();
+
+    Random random = new Random(42);
+    long timestamp = 1_500_000_000_000L;
+    List<Map<String, Object>> records = new ArrayList<>(recordsPerMetric * METRIC_COUNT);
+    for (int i = 0; i < recordsPerMetric; i++) {
+      String host = HOSTS[random.nextInt(HOSTS.length)];
+      Map<String, Object> cpu = record("cpu", timestamp);
+      // some hosts report with the alias
+      cpu.put(random.nextBoolean() ? "host" : "hostname", host);
+      double user = random.nextInt(10000) / 100.0;
+      cpu.put("user", user);
+      cpu.put("system", (100 - user) * random.nextInt(50) / 100.0);
+      cpu.put("idle", 100 - user);
+      records.add(cpu);
+
+      Map<String, Object> memory = record("memory", timestamp);
+      memory.put("host", host);
+      long used = (1L << 30) + random.nextInt(1 << 28);
+      memory.put("used", used);
+      memory.put("free", (1L << 32) - used);
+      records.add(memory);
+
+      Map<String, Object> request = record("requests", timestamp);
+      request.put("host", host);
+      request.put("path", "/api/v1/items/" + random.nextInt(100));
+      request.put("status", random.nextInt(20) == 0 ? 500 : 200);
+      request.put("bytes", (long) random.nextInt(64 * 1024));
+      request.put("latency", random.nextFloat() * 100);
+      request.put("cached", random.nextBoolean());
+      // a field the schema does not know about
+      request.put("region", "us-east-1");
+      records.add(request);
+      timestamp += random.nextInt(1000);
+    }
+    return new BenchmarkData(store, records);
+  }
+
+  private static Map<String, Object> record(String metric, long timestamp) {
+    Map<String, Object> map = new HashMap<>();
+    map.put(AvroSchemaProperties.ORG_ID_KEY, ORG);
+    map.put(AvroSchemaProperties.ORG_METRIC_TYPE_KEY, metric);
+    map.put(AvroSchemaProperties.TIMESTAMP_KEY, timestamp);
+    return map;
+  }
+
+  public SchemaStore getStore() {
+    return store;
+  }
+
+  public StoreClerk getClerk() {
+    return clerk;
+  }
+
+  /**
+   * @return the records, as they would be sent by a user
+   */
+  public Record[] getRecords() {
+    return records;
+  }
+
+  /**
+   * @return the names of the (non-base) fields set in each of the {@link #getRecords() records},
+   * as sent by the user, that are known to the metric
+   */
+  public String[][] getFieldNames() {
+    return fieldNames;
+  }
+
+  /**
+   * @return each of the {@link #getRecords() records}, encoded with the metric's schema
+   */
+  public GenericRecord[] getEncodedRecords() {
+    return encoded;
+  }
+}
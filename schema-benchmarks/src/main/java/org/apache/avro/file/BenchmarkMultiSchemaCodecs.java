@@ -0,0 +1,92 @@
+package org.apache.avro.file;
+
+import io.fineo.schema.store.BenchmarkData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and read throughput of multi-schema files compressed with each of the codecs supported by
+ * Avro, on records from several metrics with typical (repetitive) host names and measurements. The
+ * size of the file written with each codec is printed when the benchmark is setup.
+ * <p>
+ * Codecs are named as for {@link CodecFactory#fromString(String)}, optionally with a compression
+ * level after a dash (e.g. <tt>deflate-1</tt>).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BenchmarkMultiSchemaCodecs {
+
+  private static final int RECORDS_PER_METRIC = 2000;
+
+  @Param({"null", "deflate-1", "deflate-6", "snappy", "bzip2", "xz-1"})
+  public String codec;
+
+  private GenericRecord[] records;
+  private byte[] file;
+
+  @Setup
+  public void setup() throws Exception {
+    this.records = BenchmarkData.create(RECORDS_PER_METRIC).getEncodedRecords();
+    this.file = write();
+    System.out.println("# Codec " + codec + " wrote " + file.length + " bytes");
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException {
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.setCodec(codec(codec));
+    writer.create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    return writer.close();
+  }
+
+  @Benchmark
+  public long read() throws IOException {
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(file));
+    reader.setReuseRecords(true);
+    long count = 0;
+    while (reader.next() != null) {
+      count++;
+    }
+    return count;
+  }
+
+  private static CodecFactory codec(String name) {
+    int level = name.indexOf('-');
+    if (level < 0) {
+      return CodecFactory.fromString(name);
+    }
+    int value = Integer.parseInt(name.substring(level + 1));
+    switch (name.substring(0, level)) {
+      case DataFileConstants.DEFLATE_CODEC:
+        return CodecFactory.deflateCodec(value);
+      case DataFileConstants.XZ_CODEC:
+        return CodecFactory.xzCodec(value);
+      default:
+        throw new IllegalArgumentException("Codec does not have levels: " + name);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.apache.avro.file;
+
+import io.fineo.schema.store.BenchmarkData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per record of writing a multi-schema file (appending the records and closing the file)
+ * and of scanning every record in the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BenchmarkMultiSchemaFile {
+
+  private static final int RECORDS_PER_METRIC = 1000;
+  private static final int RECORDS = RECORDS_PER_METRIC * BenchmarkData.METRIC_COUNT;
+
+  private GenericRecord[] records;
+
+  /**
+   * A file to scan, written from the same records
+   */
+  @State(Scope.Benchmark)
+  public static class ScanState {
+
+    @Param({"false", "true"})
+    public boolean reuseRecords;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws Exception {
+      this.data = write(BenchmarkData.create(RECORDS_PER_METRIC).getEncodedRecords());
+    }
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    this.records = BenchmarkData.create(RECORDS_PER_METRIC).getEncodedRecords();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public byte[] write() throws IOException {
+    return write(records);
+  }
+
+  private static byte[] write(GenericRecord[] records) throws IOException {
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    return writer.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void scan(ScanState state, Blackhole hole) throws IOException {
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(state.data));
+    reader.setReuseRecords(state.reuseRecords);
+    GenericRecord next;
+    while ((next = reader.next()) != null) {
+      hole.consume(next);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.apache.avro.file;
+
+import io.fineo.schema.store.BenchmarkData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of the {@link MultiSchemaFileWriter} with different block sizes. A single record
+ * per block is the same as flushing the writer after every record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BenchmarkMultiSchemaFileWriter {
+
+  private static final int RECORDS_PER_METRIC = 1000;
+
+  @Param({"1", "100", "-1"})
+  public int recordsPerBlock;
+
+  @Param({"null", "deflate"})
+  public String codec;
+
+  private GenericRecord[] records;
+
+  @Setup
+  public void setup() throws Exception {
+    this.records = BenchmarkData.create(RECORDS_PER_METRIC).getEncodedRecords();
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException {
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.setCodec(CodecFactory.fromString(codec)).setRecordsPerBlock(recordsPerBlock);
+    writer.create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    return writer.close();
+  }
+}
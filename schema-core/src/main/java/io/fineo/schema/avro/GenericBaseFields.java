@@ -0,0 +1,102 @@
+package io.fineo.schema.avro;
+
+import io.fineo.internal.customer.BaseFields;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.Map;
+
+/**
+ * {@link BaseFields} that reads and writes through to a generic record of the base fields, rather
+ * than copying each field. Fields are mapped by name, so the generic record's schema can have the
+ * fields in any order; fields it does not have are read as <tt>null</tt>.
+ * <p>
+ * Only the accessors are supported; the (deprecated) public fields of {@link BaseFields} are never
+ * set. As with any specific record, a view is only equal to another view with the same values,
+ * never to a plain {@link BaseFields}.
+ * </p>
+ */
+class GenericBaseFields extends BaseFields {
+
+  private final GenericRecord record;
+  private final int[] positions;
+
+  GenericBaseFields(GenericRecord record, int[] positions) {
+    this.record = record;
+    this.positions = positions;
+  }
+
+  /**
+   * @param schema schema of a generic record of the base fields
+   * @return the position in the schema of each {@link BaseFields} field, or <tt>-1</tt> if the
+   * schema does not have the field
+   */
+  static int[] getPositions(Schema schema) {
+    Schema base = BaseFields.getClassSchema();
+    int[] positions = new int[base.getFields().size()];
+    for (Schema.Field field : base.getFields()) {
+      Schema.Field generic = schema.getField(field.name());
+      positions[field.pos()] = generic == null ? -1 : generic.pos();
+    }
+    return positions;
+  }
+
+  @Override
+  public Object get(int field) {
+    int position = positions[field];
+    return position < 0 ? null : record.get(position);
+  }
+
+  @Override
+  public void put(int field, Object value) {
+    int position = positions[field];
+    if (position < 0) {
+      throw new AvroRuntimeException(
+        "Base fields record does not have field: " + getSchema().getFields().get(field).name());
+    }
+    record.put(position, value);
+  }
+
+  @Override
+  public String getAliasName() {
+    Object name = get(0);
+    return name == null ? null : name.toString();
+  }
+
+  @Override
+  public void setAliasName(String value) {
+    put(0, value);
+  }
+
+  @Override
+  public Long getTimestamp() {
+    return (Long) get(1);
+  }
+
+  @Override
+  public void setTimestamp(Long value) {
+    put(1, value);
+  }
+
+  @Override
+  public Long getWriteTime() {
+    return (Long) get(2);
+  }
+
+  @Override
+  public void setWriteTime(Long value) {
+    put(2, value);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Map<String, String> getUnknownFields() {
+    return (Map<String, String>) get(3);
+  }
+
+  @Override
+  public void setUnknownFields(Map<String, String> value) {
+    put(3, value);
+  }
+}
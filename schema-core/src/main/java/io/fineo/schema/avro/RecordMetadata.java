@@ -1,37 +1,41 @@
 package io.fineo.schema.avro;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.fineo.internal.customer.BaseFields;
 import io.fineo.schema.store.AvroSchemaProperties;
 import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 
 /**
  * Metadata about a record that can tie it back to a particular org and metric
+ * <p>
+ * Everything that depends only on the record's schema (the org id, metric name and where the
+ * base fields are) is parsed once per schema instance and cached, so getting the metadata for
+ * each record of a schema after the first is just a lookup.
+ * </p>
  */
 public class RecordMetadata {
+
+  /**
+   * weak keys, so schemas are compared by identity and dropped once they are no longer used.
+   * Values must not refer to their schema, or it will never be dropped.
+   */
+  private static final Cache<Schema, SchemaMetadata> SCHEMAS =
+    CacheBuilder.newBuilder().weakKeys().build();
+
   private final GenericRecord record;
+  private final SchemaMetadata schemaMetadata;
   String orgID;
   String metricCanonicalType;
   Schema metricSchema;
 
-  private RecordMetadata(GenericRecord record) {
+  private RecordMetadata(GenericRecord record, SchemaMetadata schemaMetadata) {
     this.record = record;
-  }
-
-  private RecordMetadata setOrgID(String orgID) {
-    this.orgID = orgID;
-    return this;
-  }
-
-  private RecordMetadata setMetricCanonicalType(String metricCanonicalType) {
-    this.metricCanonicalType = metricCanonicalType;
-    return this;
-  }
-
-  private RecordMetadata setMetricSchema(Schema metricSchema) {
-    this.metricSchema = metricSchema;
-    return this;
+    this.schemaMetadata = schemaMetadata;
+    this.orgID = schemaMetadata.orgId;
+    this.metricCanonicalType = schemaMetadata.metricCanonicalType;
+    this.metricSchema = record.getSchema();
   }
 
   public String getOrgID() {
@@ -48,22 +52,60 @@ public class RecordMetadata {
 
   public static RecordMetadata get(GenericRecord record) {
     Schema schema = record.getSchema();
-    return new RecordMetadata(record).setMetricSchema(schema)
-                               .setOrgID(SchemaNameUtils.getOrgId(schema.getNamespace()))
-                               .setMetricCanonicalType(schema.getName());
+    SchemaMetadata metadata = SCHEMAS.getIfPresent(schema);
+    if (metadata == null) {
+      metadata = new SchemaMetadata(schema);
+      SCHEMAS.put(schema, metadata);
+    }
+    return new RecordMetadata(record, metadata);
   }
 
+  /**
+   * Get the base fields of the record. If the record was read generically, this is a
+   * write-through view over the record's generic base fields, not a copy: the getters read the
+   * current values from the record and the setters write into the record.
+   * <p>
+   * A view is never equal to a plain {@link BaseFields}, even with the same values. Copy it with
+   * <tt>SpecificData.get().deepCopy(BaseFields.getClassSchema(), fields)</tt> to compare it to
+   * one, or to change the fields without changing the record.
+   * </p>
+   *
+   * @return the base fields of the record, or <tt>null</tt> if it does not have any
+   */
   public BaseFields getBaseFields() {
-    Object obj = record.get(AvroSchemaProperties.BASE_FIELDS_KEY);
-    if (obj instanceof BaseFields) {
+    if (schemaMetadata.baseFieldsPosition < 0) {
+      return null;
+    }
+    Object obj = record.get(schemaMetadata.baseFieldsPosition);
+    if (obj == null || obj instanceof BaseFields) {
       return (BaseFields) obj;
     }
-    GenericData.Record rbase = (GenericData.Record) obj;
-    BaseFields fields = new BaseFields();
-    fields.getSchema().getFields()
-          .stream()
-          .map(Schema.Field::name)
-          .forEach(name -> fields.put(name, rbase.get(name)));
-    return fields;
+    GenericRecord base = (GenericRecord) obj;
+    int[] positions = base.getSchema() == schemaMetadata.baseFieldsSchema ?
+                      schemaMetadata.baseFieldPositions :
+                      GenericBaseFields.getPositions(base.getSchema());
+    return new GenericBaseFields(base, positions);
+  }
+
+  /**
+   * Everything parsed from a record's schema
+   */
+  private static class SchemaMetadata {
+    private final String orgId;
+    private final String metricCanonicalType;
+    private final int baseFieldsPosition;
+    private final Schema baseFieldsSchema;
+    private final int[] baseFieldPositions;
+
+    private SchemaMetadata(Schema schema) {
+      this.orgId = SchemaNameUtils.getOrgId(schema.getNamespace());
+      this.metricCanonicalType = schema.getName();
+      Schema.Field base = schema.getField(AvroSchemaProperties.BASE_FIELDS_KEY);
+      this.baseFieldsPosition = base == null ? -1 : base.pos();
+      this.baseFieldsSchema = base == null ? null : base.schema();
+      this.baseFieldPositions =
+        base == null || base.schema().getType() != Schema.Type.RECORD ? null :
+        GenericBaseFields.getPositions(base.schema());
+    }
   }
 }
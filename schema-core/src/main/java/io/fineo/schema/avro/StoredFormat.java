@@ -0,0 +1,107 @@
+package io.fineo.schema.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecordBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Format in which records (e.g. org and metric metadata) are stored as schema entries.
+ * <p>
+ * Schema entries are strings, so the binary formats are base64 encoded and prefixed with a
+ * marker for the format. JSON entries have no marker (they always start with a <tt>{</tt>), so
+ * entries written before there was a choice of format can still be read. Any format can be read,
+ * regardless of the format used for writing, via {@link #read(String, Schema)}.
+ * </p>
+ * <p>
+ * Like JSON, the binary formats must be read with the same schema that wrote them.
+ * </p>
+ */
+public enum StoredFormat {
+  /**
+   * Avro JSON encoding. Can be read by all versions of the store.
+   */
+  JSON(null),
+  /**
+   * Avro binary encoding
+   */
+  BINARY("avro-binary:"),
+  /**
+   * Avro binary encoding, compressed with deflate
+   */
+  DEFLATE("avro-deflate:");
+
+  private final String marker;
+
+  StoredFormat(String marker) {
+    this.marker = marker;
+  }
+
+  public <T extends SpecificRecordBase> String write(T record) throws IOException {
+    if (this == JSON) {
+      return SchemaNameUtils.toString(record);
+    }
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    OutputStream out = this == DEFLATE ? new DeflaterOutputStream(bos) : bos;
+    Schema schema = record.getSchema();
+    SpecificDatumWriter<T> writer = new SpecificDatumWriter<>(schema);
+    BinaryEncoder enc = EncoderFactory.get().binaryEncoder(out, null);
+    writer.write(record, enc);
+    enc.flush();
+    out.close();
+    return marker + Base64.getEncoder().encodeToString(bos.toByteArray());
+  }
+
+  /**
+   * Read a record written in any format
+   *
+   * @param encoded record written by {@link #write(SpecificRecordBase)}
+   * @param schema  schema of the record
+   * @return the decoded record
+   * @throws IOException if the record could not be decoded
+   */
+  public static <T> T read(String encoded, Schema schema) throws IOException {
+    StoredFormat format = getFormat(encoded);
+    if (format == JSON) {
+      return SchemaNameUtils.readFromString(encoded, schema);
+    }
+
+    byte[] bytes = Base64.getDecoder().decode(
+      encoded.substring(format.marker.length()).getBytes(StandardCharsets.US_ASCII));
+    InputStream in = new ByteArrayInputStream(bytes);
+    if (format == DEFLATE) {
+      in = new InflaterInputStream(in);
+    }
+    BinaryDecoder dec = DecoderFactory.get().binaryDecoder(in, null);
+    SpecificDatumReader<T> reader = new SpecificDatumReader<>(schema);
+    return reader.read(null, dec);
+  }
+
+  /**
+   * @param encoded record written by {@link #write(SpecificRecordBase)}
+   * @return the format in which the record was written
+   */
+  public static StoredFormat getFormat(String encoded) {
+    for (StoredFormat format : values()) {
+      if (format.marker != null && encoded.startsWith(format.marker)) {
+        return format;
+      }
+    }
+    return JSON;
+  }
+}
@@ -0,0 +1,80 @@
+package io.fineo.schema.store;
+
+import com.google.common.collect.ImmutableMap;
+import io.fineo.internal.customer.Metric;
+import io.fineo.internal.customer.OrgMetadata;
+
+import java.util.Map;
+
+/**
+ * Lookup of the canonical name of a metric (in an org) or field (in a metric) from any of its
+ * aliases, rather than scanning the aliases of every metric/field for each lookup.
+ * <p>
+ * Indexes of metadata as it was read from a {@link SchemaStore} are built once per version of
+ * the org/metric and shared through the {@link MetadataCache} of the store. The version has to
+ * be given explicitly (i.e. as the store set it when the metadata was read), since the version
+ * in the metadata is not changed when the metadata is modified locally (e.g. through
+ * {@link SchemaBuilder#updateOrg(OrgMetadata)}). Any other metadata is indexed each time.
+ * </p>
+ * <p>
+ * Immutable, so it can be shared across threads.
+ * </p>
+ */
+class AliasIndex {
+
+  private static final AliasIndex EMPTY = new AliasIndex(ImmutableMap.of());
+
+  private final Map<String, String> aliasToCname;
+
+  private AliasIndex(Map<String, String> aliasToCname) {
+    this.aliasToCname = ImmutableMap.copyOf(aliasToCname);
+  }
+
+  /**
+   * @param org org whose metrics should be indexed
+   * @return index of metric alias -> metric canonical name
+   */
+  static AliasIndex forOrg(OrgMetadata org) {
+    return org.getMetrics() == null ? EMPTY :
+           new AliasIndex(AvroSchemaManager.getAliasRemap(org));
+  }
+
+  /**
+   * @param store   store the org was read from
+   * @param version version of the org when it was read from the store
+   * @param org     org whose metrics should be indexed, unchanged since it was read
+   * @return index of metric alias -> metric canonical name
+   */
+  static AliasIndex forOrg(SchemaStore store, String version, OrgMetadata org) {
+    return store.derived(() -> forOrg(org), AliasIndex.class,
+      org.getMetadata().getCanonicalName(), version);
+  }
+
+  /**
+   * @param metric metric whose fields should be indexed
+   * @return index of field alias -> field canonical name
+   */
+  static AliasIndex forMetric(Metric metric) {
+    return new AliasIndex(AvroSchemaManager.getAliasRemap(metric));
+  }
+
+  /**
+   * @param store   store the metric was read from
+   * @param version version of the metric when it was read from the store
+   * @param orgId   id of the org that owns the metric
+   * @param metric  metric whose fields should be indexed, unchanged since it was read
+   * @return index of field alias -> field canonical name
+   */
+  static AliasIndex forMetric(SchemaStore store, String version, String orgId, Metric metric) {
+    return store.derived(() -> forMetric(metric), AliasIndex.class, orgId,
+      metric.getMetadata().getMeta().getCanonicalName(), version);
+  }
+
+  /**
+   * @param alias alias of the metric/field
+   * @return the canonical name, or <tt>null</tt> if there is no metric/field with that alias
+   */
+  String getCanonicalName(String alias) {
+    return aliasToCname.get(alias);
+  }
+}
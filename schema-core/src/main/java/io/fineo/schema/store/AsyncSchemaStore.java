@@ -0,0 +1,90 @@
+package io.fineo.schema.store;
+
+import io.fineo.internal.customer.Metric;
+import io.fineo.internal.customer.OrgMetadata;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking access to a {@link SchemaStore}. Each call is run on the specified executor and
+ * completes the returned future, so many lookups (e.g. the orgs and metrics for a batch of
+ * records) can be made in parallel, rather than waiting on each read from the repository in turn.
+ * <p>
+ * Calls that fail complete the future exceptionally with the same exception that the
+ * {@link SchemaStore} would have thrown.
+ * </p>
+ */
+public class AsyncSchemaStore {
+
+  private final SchemaStore store;
+  private final Executor executor;
+
+  public AsyncSchemaStore(SchemaStore store, Executor executor) {
+    this.store = store;
+    this.executor = executor;
+  }
+
+  public SchemaStore getStore() {
+    return store;
+  }
+
+  public CompletableFuture<OrgMetadata> getOrgMetadata(String orgId) {
+    return submit(() -> store.getOrgMetadata(orgId));
+  }
+
+  public CompletableFuture<Metric> getMetricMetadata(String orgId, String canonicalMetricName) {
+    return submit(() -> store.getMetricMetadata(orgId, canonicalMetricName));
+  }
+
+  public CompletableFuture<Map<String, Metric>> getMetricMetadata(String orgId,
+    Collection<String> canonicalMetricNames) {
+    return submit(() -> store.getMetricMetadata(orgId, canonicalMetricNames));
+  }
+
+  public CompletableFuture<Metric> getMetricMetadataFromAlias(OrgMetadata org,
+    String aliasMetricName) {
+    return submit(() -> store.getMetricMetadataFromAlias(org, aliasMetricName));
+  }
+
+  public CompletableFuture<Void> createNewOrganization(SchemaBuilder.Organization organization) {
+    return submit(() -> {
+      store.createNewOrganization(organization);
+      return null;
+    });
+  }
+
+  public CompletableFuture<Void> updateOrgMetric(SchemaBuilder.Organization org, Metric old) {
+    return submit(() -> {
+      store.updateOrgMetric(org, old);
+      return null;
+    });
+  }
+
+  public CompletableFuture<Void> updateOrg(SchemaBuilder.Organization org,
+    Map<String, Metric> updatedMetrics, OrgMetadata previous) {
+    return submit(() -> {
+      store.updateOrg(org, updatedMetrics, previous);
+      return null;
+    });
+  }
+
+  private <T> CompletableFuture<T> submit(StoreCall<T> call) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    executor.execute(() -> {
+      try {
+        future.complete(call.call());
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  @FunctionalInterface
+  private interface StoreCall<T> {
+    T call() throws Exception;
+  }
+}
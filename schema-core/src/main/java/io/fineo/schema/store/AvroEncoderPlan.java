@@ -0,0 +1,188 @@
+package io.fineo.schema.store;
+
+import io.fineo.internal.customer.FieldMetadata;
+import io.fineo.internal.customer.Metric;
+import io.fineo.internal.customer.OrgMetadata;
+import io.fineo.schema.avro.SchemaNameUtils;
+import io.fineo.schema.timestamp.MultiLevelTimestampParser;
+import io.fineo.schema.timestamp.TimestampParser;
+import org.apache.avro.Schema;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything the {@link AvroSchemaEncoder} needs that depends only on the version of the metric
+ * (and its org) being encoded, rather than the record itself. Building this means parsing the
+ * metric's schema, so plans are built once per version and shared through the
+ * {@link MetadataCache} of the {@link SchemaStore} the metric was read from.
+ * <p>
+ * Immutable, so it can be shared across encoders and threads.
+ * </p>
+ */
+class AvroEncoderPlan {
+
+  private final Schema schema;
+  /** writer for every alias of each (non-internal) field */
+  private final Map<String, AvroFieldWriter> fieldWriters;
+  /** aliases of the internal fields, which are never written */
+  private final Set<String> internalAliases;
+  private final int baseFieldsPosition;
+  /** the base fields, in the order they are written; <tt>null</tt> for any we do not know */
+  private final BaseField[] baseFields;
+  /** for each field in the schema, the branch of its union that is null, or -1 if it has none */
+  private final int[] nullBranches;
+  private final TimestampParser timestampParser;
+
+  private AvroEncoderPlan(OrgMetadata org, StoreClerk.Metric metric) {
+    Metric underlying = metric.getUnderlyingMetric();
+    Schema.Parser parser = new Schema.Parser();
+    parser.parse(underlying.getMetricSchema());
+    String orgId = org.getMetadata().getCanonicalName();
+    this.schema = parser.getTypes().get(SchemaNameUtils.getCustomerSchemaFullName(orgId,
+      underlying.getMetadata().getMeta().getCanonicalName()));
+
+    // resolve each alias directly to the field's writer, so encoding a field is a single lookup
+    AliasIndex fieldAliases = AliasIndex.forMetric(underlying);
+    Map<String, AvroFieldWriter> writers = new HashMap<>();
+    for (Map.Entry<String, FieldMetadata> field : underlying.getMetadata().getFields()
+                                                            .entrySet()) {
+      if (!field.getValue().getInternalField()) {
+        writers.put(field.getKey(), AvroFieldWriter.forField(schema.getField(field.getKey())));
+      }
+    }
+    this.fieldWriters = new HashMap<>();
+    this.internalAliases = new HashSet<>();
+    for (FieldMetadata field : underlying.getMetadata().getFields().values()) {
+      for (String alias : field.getFieldAliases()) {
+        String cname = fieldAliases.getCanonicalName(alias);
+        AvroFieldWriter writer = writers.get(cname);
+        if (writer != null) {
+          fieldWriters.put(alias, writer);
+        } else if (cname != null) {
+          internalAliases.add(alias);
+        }
+      }
+    }
+    Schema.Field base = schema.getField(AvroSchemaProperties.BASE_FIELDS_KEY);
+    this.baseFieldsPosition = base.pos();
+    this.baseFields = base.schema().getFields().stream()
+                          .map(field -> BaseField.forName(field.name()))
+                          .toArray(BaseField[]::new);
+    List<Schema.Field> fields = schema.getFields();
+    this.nullBranches = new int[fields.size()];
+    for (Schema.Field field : fields) {
+      nullBranches[field.pos()] = getNullBranch(field.schema());
+    }
+
+    this.timestampParser = new MultiLevelTimestampParser(metric.getTimestampPatterns(),
+      org.getTimestampFormats(), TimestampUtils.createExtractor(metric));
+  }
+
+  private static int getNullBranch(Schema schema) {
+    if (schema.getType() != Schema.Type.UNION) {
+      return schema.getType() == Schema.Type.NULL ? 0 : -1;
+    }
+    List<Schema> types = schema.getTypes();
+    for (int i = 0; i < types.size(); i++) {
+      if (types.get(i).getType() == Schema.Type.NULL) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Get the plan for the current version of the metric, building it if necessary
+   *
+   * @param store  store the org and metric were read from, whose cache has the plans
+   * @param org    org that owns the metric
+   * @param metric metric to encode
+   * @return plan to encode records of that metric
+   */
+  static AvroEncoderPlan get(SchemaStore store, OrgMetadata org, StoreClerk.Metric metric) {
+    Metric underlying = metric.getUnderlyingMetric();
+    return store.derived(() -> new AvroEncoderPlan(org, metric), AvroEncoderPlan.class,
+      org.getMetadata().getCanonicalName(), org.getMetadata().getVersion(),
+      underlying.getMetadata().getMeta().getCanonicalName(),
+      underlying.getMetadata().getMeta().getVersion());
+  }
+
+  Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @param alias alias of a field in the metric
+   * @return the writer for the field, or <tt>null</tt> if the alias is not known or is for an
+   * internal field
+   */
+  AvroFieldWriter getFieldWriter(String alias) {
+    return fieldWriters.get(alias);
+  }
+
+  /**
+   * @param alias alias of a field in the metric
+   * @return <tt>true</tt> if the alias is for an internal field
+   */
+  boolean isInternalField(String alias) {
+    return internalAliases.contains(alias);
+  }
+
+  int getBaseFieldsPosition() {
+    return baseFieldsPosition;
+  }
+
+  /**
+   * @return the base fields, in the order they are written, with <tt>null</tt> for any field the
+   * encoder does not know how to fill
+   */
+  BaseField[] getBaseFields() {
+    return baseFields;
+  }
+
+  /**
+   * @return number of fields in the metric's schema
+   */
+  int getFieldCount() {
+    return nullBranches.length;
+  }
+
+  /**
+   * @param position position of a field in the metric's schema
+   * @return the branch of the field's union that is null, or <tt>-1</tt> if the field cannot be
+   * null
+   */
+  int getNullBranch(int position) {
+    return nullBranches[position];
+  }
+
+  TimestampParser getTimestampParser() {
+    return timestampParser;
+  }
+
+  /**
+   * Fields in the metric's {@link AvroSchemaProperties#BASE_FIELDS_KEY base fields} that the
+   * encoder fills
+   */
+  enum BaseField {
+    ALIAS_NAME, TIMESTAMP, WRITE_TIME, UNKNOWN_FIELDS;
+
+    static BaseField forName(String name) {
+      switch (name) {
+        case AvroSchemaProperties.METRIC_ORIGINAL_FIELD_ALIAS:
+          return ALIAS_NAME;
+        case AvroSchemaProperties.TIMESTAMP_KEY:
+          return TIMESTAMP;
+        case AvroSchemaProperties.WRITE_TIME_KEY:
+          return WRITE_TIME;
+        case AvroSchemaProperties.UNKNOWN_FIELDS_KEY:
+          return UNKNOWN_FIELDS;
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package io.fineo.schema.store;
+
+import io.fineo.schema.Record;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Writes the value of a single field in a metric's schema from a {@link Record}. Fields are
+ * stored as a <tt>union{null, record{displayName, value}}</tt>, so everything that depends only on
+ * the field's schema - the schema of the instance record, the positions of its fields and how to
+ * read and encode the value's type - is resolved once, when the writer is built.
+ * <p>
+ * Immutable, so it can be shared across threads.
+ * </p>
+ */
+class AvroFieldWriter {
+
+  private final int position;
+  private final int instanceBranch;
+  private final Schema instanceSchema;
+  private final int namePosition;
+  private final int valuePosition;
+  private final ValueReader reader;
+  private final ValueEncoder encoder;
+
+  private AvroFieldWriter(Schema.Field field) {
+    this.position = field.pos();
+    this.instanceSchema = AvroSchemaEncoder.findNonNullSchemaInUnion(field);
+    this.instanceBranch = field.schema().getTypes().indexOf(instanceSchema);
+    this.namePosition = instanceSchema.getField(AvroSchemaProperties.FIELD_INSTANCE_NAME).pos();
+    Schema.Field value = instanceSchema.getField("value");
+    this.valuePosition = value.pos();
+    this.reader = getReader(value.schema());
+    this.encoder = getEncoder(value.schema());
+  }
+
+  static AvroFieldWriter forField(Schema.Field field) {
+    return new AvroFieldWriter(field);
+  }
+
+  /**
+   * @return position of the field in the metric's schema
+   */
+  int getPosition() {
+    return position;
+  }
+
+  /**
+   * @param recordFieldName name of the field in the source record
+   * @param source          record to read
+   * @return the value of the field, as the field's type, or <tt>null</tt> if the record does not
+   * have a (parseable) value for the field
+   */
+  Object read(String recordFieldName, Record source) {
+    try {
+      return reader.read(source, recordFieldName);
+    } catch (NumberFormatException e) {
+      // ignore the field
+      return null;
+    }
+  }
+
+  /**
+   * @param recordFieldName name of the field in the source record
+   * @param source          record to read
+   * @return the instance of the field, or <tt>null</tt> if the record does not have a value for
+   * the field
+   */
+  GenericData.Record write(String recordFieldName, Record source) {
+    Object value = read(recordFieldName, source);
+    if (value == null) {
+      // only can return null here because we type the record as union(null, record)
+      return null;
+    }
+    GenericData.Record record = new GenericData.Record(instanceSchema);
+    record.put(namePosition, recordFieldName);
+    record.put(valuePosition, value); // must be a non-null value
+    return record;
+  }
+
+  /**
+   * Write the instance of the field as Avro binary, exactly as a
+   * {@link org.apache.avro.generic.GenericDatumWriter} would write the
+   * {@link #write(String, Record) instance record}.
+   *
+   * @param out             encoder to write to
+   * @param recordFieldName name of the field in the source record
+   * @param value           non-null value {@link #read(String, Record) read} for the field
+   */
+  void write(Encoder out, String recordFieldName, Object value) throws IOException {
+    out.writeIndex(instanceBranch);
+    if (namePosition < valuePosition) {
+      out.writeString(recordFieldName);
+      encoder.write(out, value);
+    } else {
+      encoder.write(out, value);
+      out.writeString(recordFieldName);
+    }
+  }
+
+  private static ValueReader getReader(Schema schema) {
+    Schema.Type type = schema.getType();
+    switch (type) {
+      case RECORD:
+      case ENUM:
+      case ARRAY:
+      case MAP:
+      case FIXED:
+        return (source, name) -> {
+          throw new IllegalArgumentException("Got nested event type: " + type);
+        };
+      case UNION:
+        // find the non-null type
+        for (Schema inst : schema.getTypes()) {
+          if (inst.getType() != Schema.Type.NULL) {
+            return getReader(inst);
+          }
+        }
+        return (source, name) -> null;
+      case STRING:
+        return Record::getStringByField;
+      case BYTES:
+        return Record::getBytesByFieldName;
+      case INT:
+        return Record::getIntegerByField;
+      case LONG:
+        return Record::getLongByFieldName;
+      case FLOAT:
+        return Record::getFloatByFieldName;
+      case DOUBLE:
+        return Record::getDoubleByFieldName;
+      case BOOLEAN:
+        return Record::getBooleanByField;
+      default:
+        return (source, name) -> null;
+    }
+  }
+
+  private static ValueEncoder getEncoder(Schema schema) {
+    Schema.Type type = schema.getType();
+    switch (type) {
+      case UNION:
+        // values are always read as the first non-null type (see #getReader)
+        List<Schema> types = schema.getTypes();
+        for (int i = 0; i < types.size(); i++) {
+          if (types.get(i).getType() != Schema.Type.NULL) {
+            int branch = i;
+            ValueEncoder encoder = getEncoder(types.get(i));
+            return (out, value) -> {
+              out.writeIndex(branch);
+              encoder.write(out, value);
+            };
+          }
+        }
+        break;
+      case STRING:
+        return (out, value) -> out.writeString((CharSequence) value);
+      case BYTES:
+        return (out, value) -> out.writeBytes((ByteBuffer) value);
+      case INT:
+        return (out, value) -> out.writeInt((Integer) value);
+      case LONG:
+        return (out, value) -> out.writeLong((Long) value);
+      case FLOAT:
+        return (out, value) -> out.writeFloat((Float) value);
+      case DOUBLE:
+        return (out, value) -> out.writeDouble((Double) value);
+      case BOOLEAN:
+        return (out, value) -> out.writeBoolean((Boolean) value);
+    }
+    // never reached, we cannot read a value of any other type
+    return (out, value) -> {
+      throw new IllegalArgumentException("Cannot encode event type: " + type);
+    };
+  }
+
+  /**
+   * Reads a field's value, as the field's type, from a record
+   */
+  @FunctionalInterface
+  private interface ValueReader {
+    Object read(Record source, String fieldName);
+  }
+
+  /**
+   * Writes a field's value, as read by its {@link ValueReader}, as Avro binary
+   */
+  @FunctionalInterface
+  private interface ValueEncoder {
+    void write(Encoder out, Object value) throws IOException;
+  }
+}
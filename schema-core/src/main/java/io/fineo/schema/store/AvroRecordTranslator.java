@@ -3,26 +3,43 @@ package io.fineo.schema.store;
 import io.fineo.schema.Record;
 import io.fineo.schema.avro.RecordMetadata;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.IndexedRecord;
 
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 
 /**
  * Translate a record from the canonical names to the aliased names that a user understands. Does
  * not copy the record, but instead uses the record to get the underlying fields.
+ * <p>
+ * The plan to translate records of each schema is kept with the store and only rebuilt when the
+ * metric changes. If the store caches the latest metadata, the metric is not even read for each
+ * record, but changes made through other stores are only seen once the cached metadata expires.
+ * Translating many records in a single read should still use an
+ * {@link AvroRecordTranslatorFactory}, which also skips looking up the plan in the store.
+ * </p>
  */
 class AvroRecordTranslator {
 
   final RecordMetadata metadata;
   private final GenericRecord record;
-  private final Map<String, String> aliasMap;
+  private final AvroTranslatorPlan plan;
 
   AvroRecordTranslator(GenericRecord record, SchemaStore store) {
+    this(record, RecordMetadata.get(record), store);
+  }
+
+  private AvroRecordTranslator(GenericRecord record, RecordMetadata metadata, SchemaStore store) {
+    this(record, metadata, AvroTranslatorPlan.get(store, metadata));
+  }
+
+  AvroRecordTranslator(GenericRecord record, RecordMetadata metadata, AvroTranslatorPlan plan) {
     this.record = record;
-    this.metadata = RecordMetadata.get(record);
-    this.aliasMap = AvroSchemaManager.getAliasRemap(store.getMetricMetadata(metadata));
+    this.metadata = metadata;
+    this.plan = plan;
   }
 
   public RecordMetadata getMetadata() {
@@ -39,6 +56,8 @@ class AvroRecordTranslator {
 
   private class TranslatedRecord implements Record {
 
+    private Fields fields;
+
     @Override
     public Boolean getBooleanByField(String fieldName) {
       return (Boolean) getField(fieldName);
@@ -76,22 +95,108 @@ class AvroRecordTranslator {
 
     @Override
     public Collection<String> getFieldNames() {
-      return aliasMap.keySet();
+      return plan.getAliases();
     }
 
+    /**
+     * The user fields that are set in the record, by their display name. To avoid allocating for
+     * each record, the iterator and each entry are reused: they are only valid until the next call
+     * to {@link Iterator#next()} or {@link #getFields()}. Entries that need to be kept should be
+     * copied (e.g. into a {@link java.util.AbstractMap.SimpleImmutableEntry}).
+     */
     @Override
     public Iterable<Map.Entry<String, Object>> getFields() {
-      return null;
+      if (fields == null) {
+        fields = new Fields();
+      }
+      return fields;
     }
 
     @Override
     public Object getField(String aliasName) {
-      String cname = aliasMap.get(aliasName);
-      if (AvroSchemaProperties.IS_BASE_FIELD.test(cname)) {
-        return record.get(cname);
+      int index = plan.getFieldIndex(aliasName);
+      return index < 0 ? null : plan.getValue(record, index);
+    }
+  }
+
+  /**
+   * Iterator over the user fields that are set in the record, which is also the current entry
+   */
+  private class Fields implements Iterable<Map.Entry<String, Object>>,
+    Iterator<Map.Entry<String, Object>>, Map.Entry<String, Object> {
+
+    private int index;
+    private Object value;
+    private int nextIndex;
+    private Object nextValue;
+
+    @Override
+    public Iterator<Map.Entry<String, Object>> iterator() {
+      advance(0);
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextIndex < plan.getUserFieldCount();
+    }
+
+    @Override
+    public Map.Entry<String, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
       }
-      IndexedRecord field = (IndexedRecord) record.get(cname);
-      return field == null ? null : field.get(1);
+      this.index = nextIndex;
+      this.value = nextValue;
+      advance(index + 1);
+      return this;
+    }
+
+    private void advance(int from) {
+      nextIndex = from;
+      nextValue = null;
+      for (; nextIndex < plan.getUserFieldCount(); nextIndex++) {
+        nextValue = plan.getValue(record, nextIndex);
+        if (nextValue != null) {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public String getKey() {
+      return plan.getDisplayName(index);
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      throw new UnsupportedOperationException("Translated records are read-only");
+    }
+
+    /**
+     * Equal to any entry with the same key and value as the current entry, as per
+     * {@link Map.Entry#equals(Object)}
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+      return Objects.equals(getKey(), that.getKey()) && Objects.equals(getValue(), that.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
     }
   }
 }
@@ -0,0 +1,37 @@
+package io.fineo.schema.store;
+
+import io.fineo.schema.avro.RecordMetadata;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Create {@link AvroRecordTranslator translators} for many records. The metric for each record
+ * schema is only looked up once per factory, rather than once per record, so the factory will not
+ * see changes to the metric made after that point; it should only be used for a single read
+ * (e.g. a query).
+ * <p>
+ * Not thread-safe.
+ * </p>
+ */
+class AvroRecordTranslatorFactory {
+
+  private final SchemaStore store;
+  private final Map<Schema, AvroTranslatorPlan> plans = new HashMap<>();
+
+  public AvroRecordTranslatorFactory(SchemaStore store) {
+    this.store = store;
+  }
+
+  public AvroRecordTranslator getTranslator(GenericRecord record) {
+    RecordMetadata metadata = RecordMetadata.get(record);
+    AvroTranslatorPlan plan = plans.get(metadata.getMetricSchema());
+    if (plan == null) {
+      plan = AvroTranslatorPlan.get(store, metadata);
+      plans.put(metadata.getMetricSchema(), plan);
+    }
+    return new AvroRecordTranslator(record, metadata, plan);
+  }
+}
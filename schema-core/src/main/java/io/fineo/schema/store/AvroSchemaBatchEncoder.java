@@ -0,0 +1,92 @@
+package io.fineo.schema.store;
+
+import io.fineo.schema.Record;
+import org.apache.avro.generic.GenericData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encode many records at once. Each org is only resolved once per batch encoder and each metric
+ * once per org, rather than once per record as with
+ * {@link AvroSchemaEncoder#create(SchemaStore, Record)}. As such, the encoder sees a consistent
+ * view of the schema for as long as it is used, so it should only be used for a single batch.
+ * <p>
+ * A record that cannot be encoded does not fail the batch; instead the failure is returned in
+ * place of that record.
+ * </p>
+ * <p>
+ * Not thread-safe.
+ * </p>
+ */
+public class AvroSchemaBatchEncoder {
+
+  private final SchemaStore store;
+  private final Map<String, AvroSchemaEncoderFactory> factories = new HashMap<>();
+
+  public AvroSchemaBatchEncoder(SchemaStore store) {
+    this.store = store;
+  }
+
+  /**
+   * @param records records to encode
+   * @return the result of encoding each record, in the same order as the records
+   */
+  public List<EncodedRecord> encodeAll(Iterable<Record> records) {
+    List<EncodedRecord> encoded = new ArrayList<>();
+    for (Record record : records) {
+      encoded.add(encode(record));
+    }
+    return encoded;
+  }
+
+  public EncodedRecord encode(Record record) {
+    try {
+      String orgId = record.getStringByField(AvroSchemaProperties.ORG_ID_KEY);
+      AvroSchemaEncoderFactory factory = factories.get(orgId);
+      if (factory == null) {
+        factory = StoreClerk.snapshot(store, orgId).getEncoderFactory();
+        factories.put(orgId, factory);
+      }
+      return new EncodedRecord(record, factory.getEncoder(record).encode(), null);
+    } catch (Exception e) {
+      return new EncodedRecord(record, null, e);
+    }
+  }
+
+  public static class EncodedRecord {
+    private final Record source;
+    private final GenericData.Record encoded;
+    private final Exception failure;
+
+    private EncodedRecord(Record source, GenericData.Record encoded, Exception failure) {
+      this.source = source;
+      this.encoded = encoded;
+      this.failure = failure;
+    }
+
+    public Record getSource() {
+      return source;
+    }
+
+    /**
+     * @return the encoded record, or <tt>null</tt> if the record could not be encoded
+     */
+    public GenericData.Record getEncoded() {
+      return encoded;
+    }
+
+    /**
+     * @return the reason the record could not be encoded, or <tt>null</tt> if it was encoded
+     */
+    public Exception getFailure() {
+      return failure;
+    }
+
+    public boolean succeeded() {
+      return failure == null;
+    }
+  }
+}
@@ -2,20 +2,20 @@ package io.fineo.schema.store;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.fineo.internal.customer.BaseFields;
-import io.fineo.internal.customer.FieldMetadata;
-import io.fineo.internal.customer.Metric;
 import io.fineo.schema.FineoStopWords;
 import io.fineo.schema.Record;
-import io.fineo.schema.avro.SchemaNameUtils;
 import io.fineo.schema.exception.SchemaNotFoundException;
-import io.fineo.schema.timestamp.TimestampParser;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
+import org.apache.avro.io.Encoder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Clock;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Bridge between the 'logical' schema and the physical schema.
@@ -26,130 +26,157 @@ public class AvroSchemaEncoder {
 
   private final FineoStopWords STOP = new FineoStopWords();
 
-  private final Schema schema;
-  // essentially the reverse of the alias map in the metric metadata
-  private final Map<String, String> aliasToFieldMap;
+  private final AvroEncoderPlan plan;
   private final String metricName;
   private final Record record;
-  private final TimestampParser timestampParser;
-  private final Metric metric;
   private Clock clock = Clock.systemUTC(); // same as instant.now()
 
-  AvroSchemaEncoder(String canonicalOrgId, Metric metric, String metricName, Record record,
-    TimestampParser timestampParser) {
-    this.metric = metric;
+  AvroSchemaEncoder(AvroEncoderPlan plan, String metricName, Record record) {
+    this.plan = plan;
     this.metricName = metricName;
-    Schema.Parser parser = new Schema.Parser();
-    parser.parse(metric.getMetricSchema());
-    this.schema = parser.getTypes().get(
-      SchemaNameUtils
-        .getCustomerSchemaFullName(canonicalOrgId,
-          metric.getMetadata().getMeta().getCanonicalName()));
-    this.aliasToFieldMap = AvroSchemaManager.getAliasRemap(metric);
     this.record = record;
-    this.timestampParser = timestampParser;
   }
 
   public GenericData.Record encode() {
-    GenericData.Record avroRecord = new GenericData.Record(schema);
+    GenericData.Record avroRecord = new GenericData.Record(plan.getSchema());
     // pull out the fields that all records must contain, the 'base' fields
     populateBaseFields(record, avroRecord);
 
     // copy over all the other fields that the schema knows about
+    readFields((writer, key) -> {
+      GenericData.Record gr = writer.write(key, record);
+      if (gr != null) {
+        avroRecord.put(writer.getPosition(), gr);
+      }
+    }, (key, value) -> getAndSetUnknownFieldsIfEmpty(avroRecord).put(key, value));
+
+    // ensure that we filled the 'default' fields
+    getAndSetUnknownFieldsIfEmpty(avroRecord);
+    return avroRecord;
+  }
+
+  /**
+   * Write the record directly as Avro binary with the metric's {@link #getSchema() schema},
+   * without building the intermediate {@link GenericData.Record}. The bytes are exactly those of
+   * writing the result of {@link #encode()} with a
+   * {@link org.apache.avro.generic.GenericDatumWriter}, so they can be appended to a file as an
+   * already encoded datum (see
+   * {@link org.apache.avro.file.MultiSchemaFileWriter#appendEncoded(Schema, ByteBuffer, long)}).
+   * <p>
+   * The encoder is not flushed, so it can be reused across many records.
+   * </p>
+   *
+   * @param out encoder to write to
+   * @return the timestamp of the record
+   * @throws IOException if the encoder cannot be written
+   */
+  public long encode(Encoder out) throws IOException {
+    long timestamp = getTimestamp(record);
+    long writeTime = Instant.now(clock).toEpochMilli();
+
+    // collect the value for each position in the schema, so they can be written in order
+    AvroFieldWriter[] writers = new AvroFieldWriter[plan.getFieldCount()];
+    String[] names = new String[writers.length];
+    Object[] values = new Object[writers.length];
+    Map<String, String> unknown = new HashMap<>();
+    readFields((writer, key) -> {
+      Object value = writer.read(key, record);
+      if (value != null) {
+        int position = writer.getPosition();
+        writers[position] = writer;
+        names[position] = key;
+        values[position] = value;
+      }
+    }, unknown::put);
+
+    for (int i = 0; i < writers.length; i++) {
+      if (i == plan.getBaseFieldsPosition()) {
+        writeBaseFields(out, timestamp, writeTime, unknown);
+      } else if (writers[i] != null) {
+        writers[i].write(out, names[i], values[i]);
+      } else {
+        int nullBranch = plan.getNullBranch(i);
+        if (nullBranch < 0) {
+          throw new NullPointerException("No value for non-nullable field " +
+                                         plan.getSchema().getFields().get(i).name() + " of " +
+                                         plan.getSchema().getFullName());
+        }
+        out.writeIndex(nullBranch);
+      }
+    }
+    return timestamp;
+  }
+
+  public Schema getSchema() {
+    return plan.getSchema();
+  }
+
+  /**
+   * Pass each field in the record that the schema knows about to the writer and all the other
+   * (non-base, non-internal) fields to the unknown fields, checking the field names as we go.
+   */
+  private void readFields(BiConsumer<AvroFieldWriter, String> known,
+    BiConsumer<String, String> unknown) {
     STOP.recordStart();
     for (Map.Entry<String, Object> entry : record.getFields()) {
       String key = entry.getKey();
-      String fieldCName = aliasToFieldMap.get(key);
       // skip base/internal fields
-      FieldMetadata fieldMetadata = metric.getMetadata().getFields().get(fieldCName);
-      if (AvroSchemaProperties.IS_BASE_FIELD.test(key) ||
-          (fieldMetadata != null && fieldMetadata.getInternalField())) {
+      if (AvroSchemaProperties.IS_BASE_FIELD.test(key)) {
+        continue;
+      }
+      AvroFieldWriter writer = plan.getFieldWriter(key);
+      if (writer == null && plan.isInternalField(key)) {
         continue;
       }
 
       STOP.withField(key);
 
-      if (fieldCName != null) {
-        GenericData.Record gr = asTypedRecord(avroRecord.getSchema(), fieldCName, key, record);
-        if (gr != null) {
-          avroRecord.put(fieldCName, gr);
-        }
+      if (writer != null) {
+        known.accept(writer, key);
         continue;
       }
       // we have no idea what field this is, so track it under unknown fields
-      Map<String, String> unknown = getAndSetUnknownFieldsIfEmpty(avroRecord);
-      unknown.put(key, String.valueOf(entry.getValue()));
+      unknown.accept(key, String.valueOf(entry.getValue()));
     }
-
     STOP.endRecord();
-    // ensure that we filled the 'default' fields
-    getAndSetUnknownFieldsIfEmpty(avroRecord);
-    return avroRecord;
-  }
-
-  @VisibleForTesting
-  public static GenericData.Record asTypedRecord(Schema objectSchema, String canonicalName,
-    String recordFieldName, Record source) {
-    Schema.Field field = objectSchema.getField(canonicalName);
-
-    Schema schema = findNonNullSchemaInUnion(field);
-    Schema.Type type = schema.getField("value").schema().getType();
-    Object value = getFieldValue(source, field, type, recordFieldName);
-    if (value == null) {
-      // only can return null here because we type the record as union(null, record)
-      return null;
-    }
-    GenericData.Record record = new GenericData.Record(schema);
-    record.put(AvroSchemaProperties.FIELD_INSTANCE_NAME, recordFieldName);
-    record.put("value", value); // must be a non-null value
-    return record;
   }
 
-  private static Object getFieldValue(Record source, Schema.Field field, Schema.Type type, String
-    recordFieldName) {
-    Object value = null;
-    try {
-      switch (type) {
-        case RECORD:
-        case ENUM:
-        case ARRAY:
-        case MAP:
-        case FIXED:
-          throw new IllegalArgumentException("Got nested event type: " + type);
-        case UNION:
-          // find the non-null type
-          Schema inst = findNonNullSchemaInUnion(field.schema().getField("value"));
-          Schema.Type fieldType = inst.getType();
-          return getFieldValue(source, field, fieldType, recordFieldName);
-        case STRING:
-          value = source.getStringByField(recordFieldName);
-          break;
-        case BYTES:
-          value = source.getBytesByFieldName(recordFieldName);
-          break;
-        case INT:
-          value = source.getIntegerByField(recordFieldName);
-          break;
-        case LONG:
-          value = source.getLongByFieldName(recordFieldName);
-          break;
-        case FLOAT:
-          value = source.getFloatByFieldName(recordFieldName);
+  private void writeBaseFields(Encoder out, long timestamp, long writeTime,
+    Map<String, String> unknown) throws IOException {
+    for (AvroEncoderPlan.BaseField field : plan.getBaseFields()) {
+      if (field == null) {
+        throw new IllegalStateException(
+          "Unknown base field in schema: " + plan.getSchema().getFullName());
+      }
+      switch (field) {
+        case ALIAS_NAME:
+          out.writeString(metricName);
           break;
-        case DOUBLE:
-          value = source.getDoubleByFieldName(recordFieldName);
+        case TIMESTAMP:
+          out.writeLong(timestamp);
           break;
-        case BOOLEAN:
-          value = source.getBooleanByField(recordFieldName);
+        case WRITE_TIME:
+          out.writeLong(writeTime);
           break;
-        case NULL:
-          value = null;
+        case UNKNOWN_FIELDS:
+          out.writeMapStart();
+          out.setItemCount(unknown.size());
+          for (Map.Entry<String, String> entry : unknown.entrySet()) {
+            out.startItem();
+            out.writeString(entry.getKey());
+            out.writeString(entry.getValue());
+          }
+          out.writeMapEnd();
           break;
       }
-    } catch (NumberFormatException e) {
-      // ignore the field
     }
-    return value;
+  }
+
+  @VisibleForTesting
+  public static GenericData.Record asTypedRecord(Schema objectSchema, String canonicalName,
+    String recordFieldName, Record source) {
+    return AvroFieldWriter.forField(objectSchema.getField(canonicalName))
+                          .write(recordFieldName, source);
   }
 
   static Schema findNonNullSchemaInUnion(Schema.Field field) {
@@ -159,10 +186,10 @@ public class AvroSchemaEncoder {
   }
 
   private void populateBaseFields(Record record, GenericData.Record avroRecord) {
-    BaseFields fields = (BaseFields) avroRecord.get(AvroSchemaProperties.BASE_FIELDS_KEY);
+    BaseFields fields = (BaseFields) avroRecord.get(plan.getBaseFieldsPosition());
     if (fields == null) {
       fields = new BaseFields();
-      avroRecord.put(AvroSchemaProperties.BASE_FIELDS_KEY, fields);
+      avroRecord.put(plan.getBaseFieldsPosition(), fields);
     }
     populateBaseFields(fields, record);
   }
@@ -175,11 +202,11 @@ public class AvroSchemaEncoder {
 
   // handle special case management of the timestamp
   private Long getTimestamp(Record record) {
-    return timestampParser.getTimestamp(record);
+    return plan.getTimestampParser().getTimestamp(record);
   }
 
   private Map<String, String> getAndSetUnknownFieldsIfEmpty(GenericData.Record avroRecord) {
-    BaseFields fields = (BaseFields) avroRecord.get(AvroSchemaProperties.BASE_FIELDS_KEY);
+    BaseFields fields = (BaseFields) avroRecord.get(plan.getBaseFieldsPosition());
     Map<String, String> unknown = fields.getUnknownFields();
     if (unknown == null) {
       unknown = new HashMap<>();
@@ -191,7 +218,7 @@ public class AvroSchemaEncoder {
   public static AvroSchemaEncoder create(SchemaStore store, Record record)
     throws SchemaNotFoundException {
     String orgid = record.getStringByField(AvroSchemaProperties.ORG_ID_KEY);
-    return new StoreClerk(store, orgid).getEncoderFactory().getEncoder(record);
+    return StoreClerk.snapshot(store, orgid).getEncoderFactory().getEncoder(record);
   }
 
   @VisibleForTesting
@@ -4,7 +4,9 @@ import com.google.common.annotations.VisibleForTesting;
 import io.fineo.internal.customer.OrgMetadata;
 import io.fineo.schema.Record;
 import io.fineo.schema.exception.SchemaNotFoundException;
-import io.fineo.schema.timestamp.MultiLevelTimestampParser;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -14,12 +16,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
  *  Testing note: You should not use the class if you can help it. Its exposed for legacy reasons.
  *  Instead, you should use the higher-level interfaces exposed in this package
  * </p>
+ * <p>
+ * Metrics are only looked up once for each alias, so the factory will not see changes to the
+ * metric made after that point.
+ * </p>
  */
 @VisibleForTesting
 public class AvroSchemaEncoderFactory {
 
   private final StoreClerk store;
   private final OrgMetadata metadata;
+  private final Map<String, StoreClerk.Metric> metrics = new HashMap<>();
+  private final Map<String, AvroEncoderPlan> plans = new HashMap<>();
 
   public AvroSchemaEncoderFactory(StoreClerk clerk, OrgMetadata orgMetadata) {
     this.store = clerk;
@@ -34,20 +42,23 @@ public class AvroSchemaEncoderFactory {
       "No metric type found in record for metric type keys: %s or standard type key '%s'",
       metadata.getMetricKeys() == null ? "[]" : metadata.getMetricKeys(),
       AvroSchemaProperties.ORG_METRIC_TYPE_KEY); record.getStringByField(key);
-    StoreClerk.Metric metric = store.getMetricForUserNameOrAlias(metricAlias);
+    StoreClerk.Metric metric = metrics.get(metricAlias);
+    if (metric == null) {
+      metric = store.getMetricForUserNameOrAlias(metricAlias);
+      metrics.put(metricAlias, metric);
+    }
     return new RecordMetric(metricAlias, metric);
   }
 
   public AvroSchemaEncoder getEncoder(Record record)
     throws SchemaNotFoundException {
     RecordMetric rm = getMetricForRecord(record);
-    MultiLevelTimestampParser parser =
-      new MultiLevelTimestampParser(rm.metric.getTimestampPatterns(),
-        metadata.getTimestampFormats(),
-        TimestampUtils.createExtractor(rm.metric));
-    return new AvroSchemaEncoder(metadata.getMetadata().getCanonicalName(),
-      rm.metric.getUnderlyingMetric(),
-      rm.metricAlias, record, parser);
+    AvroEncoderPlan plan = plans.get(rm.metricAlias);
+    if (plan == null) {
+      plan = AvroEncoderPlan.get(store.getStore(), metadata, rm.metric);
+      plans.put(rm.metricAlias, plan);
+    }
+    return new AvroSchemaEncoder(plan, rm.metricAlias, record);
   }
 
   public static class RecordMetric {
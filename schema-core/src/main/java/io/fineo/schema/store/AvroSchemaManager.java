@@ -3,7 +3,6 @@ package io.fineo.schema.store;
 import io.fineo.internal.customer.Metric;
 import io.fineo.internal.customer.MetricMetadata;
 import io.fineo.internal.customer.OrgMetadata;
-import io.fineo.schema.avro.RecordMetadata;
 import org.apache.avro.generic.GenericRecord;
 
 import java.util.HashMap;
@@ -17,20 +16,27 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 class AvroSchemaManager {
 
-  private final SchemaStore store;
+  private final AvroRecordTranslatorFactory translators;
 
   public AvroSchemaManager(SchemaStore store, String orgId) {
-    this.store = store;
+    this.translators = new AvroRecordTranslatorFactory(store);
     checkNotNull(store.getOrgMetadata(checkNotNull(orgId, "OrgID can never be null!")));
   }
 
+  /**
+   * Translate a single record. The plan to translate the record is kept with the store, so the
+   * metric is not read for each record (see {@link AvroRecordTranslator}).
+   */
   public static AvroRecordTranslator translator(SchemaStore store, GenericRecord record) {
-    RecordMetadata metadata = RecordMetadata.get(record);
-    return new AvroSchemaManager(store, metadata.getOrgID()).translator(record);
+    return new AvroRecordTranslator(record, store);
   }
 
+  /**
+   * Metrics are only looked up once for each record schema, so translators from the same manager
+   * will not see changes to the metric made after that point.
+   */
   public AvroRecordTranslator translator(GenericRecord record) {
-    return new AvroRecordTranslator(record, store);
+    return translators.getTranslator(record);
   }
 
   public static Map<String, String> getAliasRemap(OrgMetadata org) {
@@ -13,6 +13,7 @@ public class AvroSchemaProperties {
   public static final String ORG_METRIC_TYPE_KEY = ClientSchemaProperties.METRIC_TYPE_KEY;
   public static final String TIMESTAMP_KEY = ClientSchemaProperties.TIMESTAMP_KEY;
   public static final String WRITE_TIME_KEY = "writeTime";
+  public static final String UNKNOWN_FIELDS_KEY = "unknown_fields";
   public static final String FIELD_INSTANCE_NAME = "displayName";
   public static final String METRIC_ORIGINAL_FIELD_ALIAS = "aliasName";
 
@@ -0,0 +1,148 @@
+package io.fineo.schema.store;
+
+import io.fineo.internal.customer.FieldMetadata;
+import io.fineo.internal.customer.Metric;
+import io.fineo.schema.avro.RecordMetadata;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Everything the {@link AvroRecordTranslator} needs that depends only on the version of the
+ * metric and the schema of the record being translated, rather than the record itself. Each alias
+ * is resolved to the position of its field in the record's schema (and of the value in the
+ * field's instance), so reading a field is a single lookup and then reading by position.
+ * <p>
+ * Plans are built once per version of the metric and record schema and shared through the
+ * {@link MetadataCache} of the store. Immutable, so it can be shared across translators and
+ * threads.
+ * </p>
+ */
+class AvroTranslatorPlan {
+
+  /** index of the field for each alias */
+  private final Map<String, Integer> fieldIndexes;
+  private final Set<String> aliases;
+  private final String[] displayNames;
+  /** number of (non-internal) fields, which have the lowest indexes */
+  private final int userFieldCount;
+  /** position of each field in the record's schema, or -1 if the schema does not have it */
+  private final int[] positions;
+  /** position of the value in the field's instance, or -1 if the field is stored directly */
+  private final int[] valuePositions;
+
+  private AvroTranslatorPlan(Metric metric, Schema schema) {
+    Map<String, FieldMetadata> fields = metric.getMetadata().getFields();
+    this.fieldIndexes = new HashMap<>();
+    this.displayNames = new String[fields.size()];
+    this.positions = new int[fields.size()];
+    this.valuePositions = new int[fields.size()];
+    // user fields come first, so they can be iterated without the internal fields
+    int userIndex = 0;
+    int internalIndex = (int) fields.values().stream().filter(f -> !f.getInternalField()).count();
+    this.userFieldCount = internalIndex;
+    for (Map.Entry<String, FieldMetadata> entry : fields.entrySet()) {
+      String cname = entry.getKey();
+      FieldMetadata field = entry.getValue();
+      int index = field.getInternalField() ? internalIndex++ : userIndex++;
+      for (String alias : field.getFieldAliases()) {
+        fieldIndexes.put(alias, index);
+      }
+      displayNames[index] = field.getDisplayName();
+      Schema.Field schemaField = schema.getField(cname);
+      positions[index] = schemaField == null ? -1 : schemaField.pos();
+      valuePositions[index] = getValuePosition(cname, schemaField);
+    }
+    this.aliases = Collections.unmodifiableSet(fieldIndexes.keySet());
+  }
+
+  private static int getValuePosition(String cname, Schema.Field field) {
+    if (field == null || AvroSchemaProperties.IS_BASE_FIELD.test(cname) ||
+        field.schema().getType() != Schema.Type.UNION) {
+      return -1;
+    }
+    Schema instance = AvroSchemaEncoder.findNonNullSchemaInUnion(field);
+    Schema.Field value = instance == null || instance.getType() != Schema.Type.RECORD ? null :
+                         instance.getField("value");
+    return value == null ? -1 : value.pos();
+  }
+
+  /**
+   * Get the plan to translate records with the same schema as the record, building it if
+   * necessary. Plans are kept by the version of the metric they were built from. If the store
+   * caches the latest metric entries, the plan for the latest version is also kept, so the metric
+   * is only read when that plan is not cached (see
+   * {@link SchemaStore#derivedFromLatestMetric(CharSequence, String, Object, Supplier)}).
+   *
+   * @param store    store with the metric metadata
+   * @param metadata metadata of the record to translate
+   * @return plan to translate records of the metric with the record's schema
+   */
+  static AvroTranslatorPlan get(SchemaStore store, RecordMetadata metadata) {
+    Schema schema = metadata.getMetricSchema();
+    return store.derivedFromLatestMetric(metadata.getOrgID(), metadata.getMetricCanonicalType(),
+      schema, () -> {
+        Metric metric = store.getMetricMetadata(metadata);
+        return store.derived(() -> new AvroTranslatorPlan(metric, schema),
+          AvroTranslatorPlan.class, metadata.getOrgID(),
+          metric.getMetadata().getMeta().getCanonicalName(),
+          metric.getMetadata().getMeta().getVersion(), schema);
+      });
+  }
+
+  /**
+   * @return every alias of every field in the metric
+   */
+  Set<String> getAliases() {
+    return aliases;
+  }
+
+  /**
+   * @return number of user (non-internal) fields in the metric. These are the fields with indexes
+   * from <tt>0</tt> up to the count
+   */
+  int getUserFieldCount() {
+    return userFieldCount;
+  }
+
+  /**
+   * @param alias alias of a field in the metric
+   * @return index of the field, or <tt>-1</tt> if the alias is not known
+   */
+  int getFieldIndex(String alias) {
+    Integer index = fieldIndexes.get(alias);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @param index index of a field
+   * @return the name the user gave the field
+   */
+  String getDisplayName(int index) {
+    return displayNames[index];
+  }
+
+  /**
+   * @param record record with the schema of the plan
+   * @param index  index of a field
+   * @return the value of the field in the record, or <tt>null</tt> if it is not set
+   */
+  Object getValue(GenericRecord record, int index) {
+    int position = positions[index];
+    if (position < 0) {
+      return null;
+    }
+    Object value = record.get(position);
+    int valuePosition = valuePositions[index];
+    if (value == null || valuePosition < 0) {
+      return value;
+    }
+    return ((IndexedRecord) value).get(valuePosition);
+  }
+}
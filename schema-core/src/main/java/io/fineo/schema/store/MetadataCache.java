@@ -0,0 +1,301 @@
+package io.fineo.schema.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificData;
+import org.schemarepo.SchemaEntry;
+import org.schemarepo.Subject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the decoded schema entries (org and metric metadata) read by a {@link SchemaStore}.
+ * <p>
+ * Decoded instances are keyed by the subject name and the id of the {@link SchemaEntry} they
+ * were read from. A schema entry never changes once it is written, so these are only ever
+ * evicted for size.
+ * </p>
+ * <p>
+ * Optionally, the latest {@link SchemaEntry} for each subject can also be kept for a short time,
+ * which skips the round-trip to the repository entirely. The latest entry for a subject is
+ * invalidated whenever the store registers a new schema for that subject, but changes made
+ * through <i>other</i> stores may not be seen until the entry expires. This is disabled by
+ * default.
+ * </p>
+ * <p>
+ * Avro records are mutable, so callers always get back a copy of the cached instance.
+ * </p>
+ * <p>
+ * Finally, objects that are expensive to build from a specific version of the metadata (e.g.
+ * parsed schemas) can also be kept here, keyed by the versions from which they were built. When
+ * the latest entries are cached, those built from whatever the latest version of a subject is can
+ * also be kept, without reading the latest entry; like the latest entries, they are dropped when
+ * the subject is changed locally and expire with the latest entry ttl.
+ * </p>
+ * <p>
+ * A cache can be shared by many stores. Different repositories can have the same subjects and
+ * versions for different metadata, so everything is also keyed by the <i>scope</i> (the
+ * repository) it was read from; stores over the same repository share entries.
+ * </p>
+ */
+public class MetadataCache {
+
+  public static final long DEFAULT_MAX_ENTRIES = 1000;
+
+  private final Cache<EntryKey, Object> decoded;
+  private final Cache<List<Object>, SchemaEntry> latest;
+  private final Cache<Object, Object> derived;
+  private final Cache<List<Object>, Map<Object, Object>> current;
+
+  /**
+   * Cache of decoded entries, without any caching of the latest entry for a subject.
+   */
+  public MetadataCache() {
+    this(DEFAULT_MAX_ENTRIES, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param maxEntries max number of decoded entries (and latest entries) to keep. If <tt>0</tt>,
+   *                   nothing is cached
+   * @param latestTtl  amount of time to keep the latest entry for a subject. If <tt>0</tt>, the
+   *                   latest entry is always read from the repository
+   * @param unit       unit of the latest entry ttl
+   */
+  public MetadataCache(long maxEntries, long latestTtl, TimeUnit unit) {
+    this.decoded = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    this.derived = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    this.current = latestTtl <= 0 ? null :
+                   CacheBuilder.newBuilder()
+                               .maximumSize(maxEntries)
+                               .expireAfterWrite(latestTtl, unit)
+                               .<List<Object>, Map<Object, Object>>build();
+    this.latest = latestTtl <= 0 ? null :
+                  CacheBuilder.newBuilder()
+                              .maximumSize(maxEntries)
+                              .expireAfterWrite(latestTtl, unit)
+                              .<List<Object>, SchemaEntry>build();
+  }
+
+  /**
+   * @return a cache that does not store anything
+   */
+  public static MetadataCache disabled() {
+    return new MetadataCache(0, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param scope   scope of the subject
+   * @param subject subject to read
+   * @return the latest entry for the subject, possibly from the cache
+   */
+  SchemaEntry latest(Object scope, Subject subject) {
+    if (latest == null) {
+      return subject.latest();
+    }
+    List<Object> key = key(scope, subject.getName());
+    SchemaEntry entry = latest.getIfPresent(key);
+    if (entry == null) {
+      entry = subject.latest();
+      if (entry != null) {
+        latest.put(key, entry);
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Get the latest entry for many subjects at once
+   *
+   * @param scope    scope of the subjects
+   * @param subjects names of the subjects to read
+   * @param loader   read the latest entry for the subjects we don't have cached. Subjects that
+   *                 don't exist should not be in the returned map
+   * @return the latest entry for each subject that exists, possibly from the cache
+   */
+  Map<String, SchemaEntry> latest(Object scope, Collection<String> subjects,
+    Function<Collection<String>, Map<String, SchemaEntry>> loader) {
+    if (latest == null) {
+      return loader.apply(subjects);
+    }
+    Map<String, SchemaEntry> entries = new HashMap<>();
+    for (String subject : subjects) {
+      SchemaEntry entry = latest.getIfPresent(key(scope, subject));
+      if (entry != null) {
+        entries.put(subject, entry);
+      }
+    }
+    List<String> missing = subjects.stream()
+                                   .filter(subject -> !entries.containsKey(subject))
+                                   .collect(Collectors.toList());
+    if (!missing.isEmpty()) {
+      Map<String, SchemaEntry> loaded = loader.apply(missing);
+      for (Map.Entry<String, SchemaEntry> entry : loaded.entrySet()) {
+        if (entry.getValue() != null) {
+          latest.put(key(scope, entry.getKey()), entry.getValue());
+        }
+      }
+      entries.putAll(loaded);
+    }
+    return entries;
+  }
+
+  /**
+   * Get the decoded instance of the entry.
+   *
+   * @param scope   scope of the subject
+   * @param subject name of the subject that has the entry
+   * @param entry   entry to decode, can be <tt>null</tt>
+   * @param schema  schema of the decoded instance
+   * @param decoder decode the entry if we don't have a cached instance
+   * @return a copy of the decoded entry or <tt>null</tt> if the entry was <tt>null</tt>
+   */
+  // each subject is only ever decoded to one type, so the cached value is always a T
+  @SuppressWarnings("unchecked")
+  <T> T get(Object scope, String subject, SchemaEntry entry, Schema schema,
+    Function<SchemaEntry, T> decoder) {
+    if (entry == null) {
+      return null;
+    }
+    EntryKey key = new EntryKey(scope, subject, entry.getId());
+    Object value = decoded.getIfPresent(key);
+    if (value == null) {
+      value = decoder.apply(entry);
+      decoded.put(key, value);
+    }
+    return (T) SpecificData.get().deepCopy(schema, value);
+  }
+
+  /**
+   * Get an instance derived from a specific version of the metadata, building it if we don't
+   * have one yet. These are never invalidated, so the key must include the version of each
+   * piece of metadata used to build the instance. Unlike decoded entries, derived instances are
+   * shared between callers, so they must be immutable.
+   *
+   * @param scope   scope of the metadata
+   * @param key     unique key for the instance, including the metadata version(s)
+   * @param builder build the instance if its not cached
+   * @return the cached or newly built instance
+   */
+  // the key identifies what was built, so the cached value is always the builder's T
+  @SuppressWarnings("unchecked")
+  <T> T derived(Object scope, Object key, Supplier<T> builder) {
+    key = key(scope, key);
+    Object value = derived.getIfPresent(key);
+    if (value == null) {
+      value = builder.get();
+      derived.put(key, value);
+    }
+    return (T) value;
+  }
+
+  /**
+   * Get an instance derived from the latest version of the subject, building it if we don't have
+   * one yet. The builder only has to read the latest version when the instance is not cached.
+   * Like the latest entries, these are dropped when the subject is changed locally and expire
+   * with the latest entry ttl. Without a ttl, nothing is kept here and the builder is always
+   * called, so it should read the latest version and look up the instance by that version with
+   * {@link #derived(Object, Object, Supplier)}. Derived instances are shared between callers, so
+   * they must be immutable.
+   *
+   * @param scope   scope of the subject
+   * @param subject name of the subject the instance is derived from
+   * @param key     unique key for the instance within the subject
+   * @param builder build the instance from the latest version of the subject, if its not cached
+   * @return the cached or newly built instance
+   */
+  // the key identifies what was built, so the cached value is always the builder's T
+  @SuppressWarnings("unchecked")
+  <T> T current(Object scope, String subject, Object key, Supplier<T> builder) {
+    if (current == null) {
+      return builder.get();
+    }
+    List<Object> subjectKey = key(scope, subject);
+    Map<Object, Object> instances = current.getIfPresent(subjectKey);
+    if (instances == null) {
+      instances = new ConcurrentHashMap<>();
+      current.put(subjectKey, instances);
+    }
+    Object value = instances.get(key);
+    if (value == null) {
+      value = builder.get();
+      instances.put(key, value);
+    }
+    return (T) value;
+  }
+
+  /**
+   * Drop the latest entry we have for the subject, and anything derived from it. Called when the
+   * subject is changed locally.
+   *
+   * @param scope   scope of the subject
+   * @param subject name of the subject that changed
+   */
+  void invalidate(Object scope, String subject) {
+    if (latest != null) {
+      current.invalidate(key(scope, subject));
+      latest.invalidate(key(scope, subject));
+    }
+  }
+
+  /**
+   * Drop everything in the cache
+   */
+  public void clear() {
+    decoded.invalidateAll();
+    derived.invalidateAll();
+    if (latest != null) {
+      current.invalidateAll();
+      latest.invalidateAll();
+    }
+  }
+
+  private static List<Object> key(Object scope, Object key) {
+    return Arrays.asList(scope, key);
+  }
+
+  private static class EntryKey {
+    private final Object scope;
+    private final String subject;
+    private final String id;
+
+    private EntryKey(Object scope, String subject, String id) {
+      this.scope = scope;
+      this.subject = subject;
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof EntryKey))
+        return false;
+
+      EntryKey entryKey = (EntryKey) o;
+
+      if (!scope.equals(entryKey.scope))
+        return false;
+      if (!subject.equals(entryKey.subject))
+        return false;
+      return id != null ? id.equals(entryKey.id) : entryKey.id == null;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = scope.hashCode();
+      result = 31 * result + subject.hashCode();
+      result = 31 * result + (id != null ? id.hashCode() : 0);
+      return result;
+    }
+  }
+}
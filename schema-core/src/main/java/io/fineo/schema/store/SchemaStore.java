@@ -8,7 +8,8 @@ import io.fineo.internal.customer.OrgMetadata;
 import io.fineo.internal.customer.OrgMetricMetadata;
 import io.fineo.schema.OldSchemaException;
 import io.fineo.schema.avro.RecordMetadata;
-import io.fineo.schema.avro.SchemaNameUtils;
+import io.fineo.schema.avro.StoredFormat;
+import io.fineo.schema.aws.dynamodb.BatchReadRepository;
 import org.apache.avro.Schema;
 import org.schemarepo.Repository;
 import org.schemarepo.SchemaEntry;
@@ -18,20 +19,70 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * Stores and retrieves schema for record instances
+ * <p>
+ * Org and metric metadata is written in the configured {@link StoredFormat} (JSON, by default),
+ * but can always be read in any format.
+ * </p>
  */
 public class SchemaStore {
   private static final Logger LOG = LoggerFactory.getLogger(SchemaStore.class);
   private final Repository repo;
+  private final MetadataCache cache;
+  private final StoredFormat format;
 
   public SchemaStore(Repository repo) {
+    this(repo, new MetadataCache());
+  }
+
+  public SchemaStore(Repository repo, MetadataCache cache) {
+    this(repo, cache, StoredFormat.JSON);
+  }
+
+  public SchemaStore(Repository repo, MetadataCache cache, StoredFormat format) {
     this.repo = repo;
+    this.cache = cache;
+    this.format = format;
+  }
+
+  /**
+   * Get an instance derived from metadata read through this store, building it if it is not in
+   * the {@link MetadataCache#derived(Object, Object, Supplier) cache}. Like everything else in
+   * the cache, the key is scoped to the repository of this store.
+   *
+   * @param builder build the instance if its not cached
+   * @param key     parts of the key for the instance, including the metadata version(s)
+   * @return the cached or newly built instance
+   */
+  <T> T derived(Supplier<T> builder, Object... key) {
+    return cache.derived(repo, Arrays.asList(key), builder);
+  }
+
+  /**
+   * Get an instance derived from the latest version of the metric, building it if it is not in
+   * the {@link MetadataCache#current(Object, String, Object, Supplier) cache}. When the cache
+   * keeps the latest entries, the metric only has to be read when the instance is not cached, so
+   * changes to the metric are seen when they are made through this store or once the cache entry
+   * expires. Otherwise, the builder is always called and should read the latest metric.
+   *
+   * @param orgId               id of the org that owns the metric
+   * @param canonicalMetricName canonical name of the metric
+   * @param key                 key for the instance within the metric
+   * @param builder             build the instance from the latest version of the metric
+   * @return the cached or newly built instance
+   */
+  <T> T derivedFromLatestMetric(CharSequence orgId, String canonicalMetricName, Object key,
+    Supplier<T> builder) {
+    return cache.current(repo, getMetricSubjectName(orgId, canonicalMetricName), key, builder);
   }
 
   public void createNewOrganization(SchemaBuilder.Organization organization)
@@ -40,7 +91,7 @@ public class SchemaStore {
     String orgID = orgMetadata.getMetadata().getCanonicalName();
     Subject subject = repo.register(orgID, null);
     try {
-      SchemaEntry entry = subject.registerIfLatest(SchemaNameUtils.toString(orgMetadata), null);
+      SchemaEntry entry = registerIfLatest(subject, format.write(orgMetadata), null);
       Preconditions.checkState(entry != null, "Have an existing schema for the organization!");
     } catch (SchemaValidationException e) {
       throw new IllegalArgumentException("Already have a schema for the organization", e);
@@ -73,7 +124,7 @@ public class SchemaStore {
     throws IOException {
     SchemaEntry entry = org.latest();
     // check to see if we already know about this org
-    OrgMetadata currentOrgMetadata = parse(entry, OrgMetadata.getClassSchema());
+    OrgMetadata currentOrgMetadata = parse(org.getName(), entry, OrgMetadata.getClassSchema());
     Metadata metricBaseMetdata = next.getMetadata().getMeta();
     String metricId = metricBaseMetdata.getCanonicalName();
     if (currentOrgMetadata.getMetrics().containsKey(metricId)) {
@@ -84,7 +135,7 @@ public class SchemaStore {
     // update the org schema to what we just got sent
     try {
       setVersion(orgMetadata, entry);
-      org.registerIfLatest(SchemaNameUtils.toString(orgMetadata), entry);
+      registerIfLatest(org, format.write(orgMetadata), entry);
     } catch (SchemaValidationException e) {
       throw new IllegalArgumentException(e);
     }
@@ -95,7 +146,7 @@ public class SchemaStore {
     Subject orgSubject = repo.lookup(orgId);
     SchemaEntry latestEntry = orgSubject.latest();
     try {
-      latestEntry = orgSubject.registerIfLatest(SchemaNameUtils.toString(next), latestEntry);
+      latestEntry = registerIfLatest(orgSubject, format.write(next), latestEntry);
     } catch (SchemaValidationException e) {
       throw new IllegalArgumentException(e);
     }
@@ -136,14 +187,14 @@ public class SchemaStore {
           null);
     }
     SchemaEntry latest = metricSubject.latest();
-    Metric storedPrevious = parse(latest, Metric.getClassSchema());
+    Metric storedPrevious = parse(metricSubject.getName(), latest, Metric.getClassSchema());
     // register because its the latest
     if ((latest == null && previous == null) || storedPrevious.equals(previous)) {
       try {
         // register the schema as long as we are still the latest. Returns null if its changed,
         // in which case we fall through to the oldSchema exception
         SchemaEntry entry =
-          metricSubject.registerIfLatest(SchemaNameUtils.toString(schema), latest);
+          registerIfLatest(metricSubject, format.write(schema), latest);
         if (entry != null) {
           setVersion(schema.getMetadata(), entry);
           return;
@@ -157,6 +208,19 @@ public class SchemaStore {
     throw new OldSchemaException(storedPrevious, previous);
   }
 
+  /**
+   * Register the schema with the subject, if the specified entry is still the latest. Either way,
+   * the subject has (or may have) changed, so any cached latest entry for the subject is dropped.
+   */
+  private SchemaEntry registerIfLatest(Subject subject, String schema, SchemaEntry latest)
+    throws SchemaValidationException {
+    try {
+      return subject.registerIfLatest(schema, latest);
+    } finally {
+      cache.invalidate(repo, subject.getName());
+    }
+  }
+
   private void setVersion(OrgMetadata metadata, SchemaEntry entry) {
     setVersion(metadata.getMetadata(), entry);
   }
@@ -182,8 +246,8 @@ public class SchemaStore {
       return null;
     }
     LOG.debug("Got subject for org: {}", orgId);
-    SchemaEntry entry = subject.latest();
-    OrgMetadata metadata = parse(entry, OrgMetadata.getClassSchema());
+    SchemaEntry entry = cache.latest(repo, subject);
+    OrgMetadata metadata = parse(subject.getName(), entry, OrgMetadata.getClassSchema());
     LOG.debug("Parsed org metadata: \n{}", metadata);
     setVersion(metadata, entry);
     LOG.debug("Set version to: {}", entry.getId());
@@ -199,15 +263,7 @@ public class SchemaStore {
   }
 
   public String getMetricCNameFromAlias(OrgMetadata org, String aliasMetricName) {
-    if (org.getMetrics() == null) {
-      return null;
-    }
-    Optional<String> canonicalName =
-      org.getMetrics().entrySet().stream()
-         .filter(SchemaUtils.metricHasAlias(aliasMetricName))
-         .map(entry -> entry.getKey())
-         .findFirst();
-    return canonicalName.orElse(null);
+    return AliasIndex.forOrg(org).getCanonicalName(aliasMetricName);
   }
 
   /**
@@ -229,12 +285,9 @@ public class SchemaStore {
 
   public OrgMetricMetadata getOrgMetricMetadataForAliasMetricName(OrgMetadata org,
     String aliasMetricName) {
-    Optional<Map.Entry<String, OrgMetricMetadata>> match =
-      org.getMetrics().entrySet().stream()
-         .filter(SchemaUtils.metricHasAlias(aliasMetricName))
-         .findFirst();
-    return match.isPresent() ?
-           match.get().getValue() :
+    String canonicalName = getMetricCNameFromAlias(org, aliasMetricName);
+    return canonicalName != null ?
+           org.getMetrics().get(canonicalName) :
            null;
   }
 
@@ -246,12 +299,56 @@ public class SchemaStore {
   public Metric getMetricMetadata(CharSequence orgId, String canonicalMetricName) {
     Subject subject = Preconditions.checkNotNull(getMetricSubject(orgId, canonicalMetricName),
       "[{}] No schema subject present for metric id: {}", orgId, canonicalMetricName);
-    SchemaEntry entry = subject.latest();
-    Metric metric = parse(entry, Metric.getClassSchema());
+    SchemaEntry entry = cache.latest(repo, subject);
+    Metric metric = parse(subject.getName(), entry, Metric.getClassSchema());
     setVersion(metric.getMetadata(), entry);
     return metric;
   }
 
+  /**
+   * Get the metric information for many metrics in the organization at once. Where the
+   * repository supports it (i.e. a {@link BatchReadRepository}), the metrics are read in batches,
+   * rather than one at a time.
+   *
+   * @param orgId                id of the org that owns the metrics
+   * @param canonicalMetricNames canonical names of the metrics to read
+   * @return the metric information for each metric name. Metrics that are not found are not
+   * included.
+   */
+  public Map<String, Metric> getMetricMetadata(String orgId,
+    Collection<String> canonicalMetricNames) {
+    Map<String, String> subjects = new HashMap<>();
+    for (String metric : canonicalMetricNames) {
+      subjects.put(getMetricSubjectName(orgId, metric), metric);
+    }
+    Map<String, SchemaEntry> entries =
+      cache.latest(repo, subjects.keySet(), this::getLatestEntries);
+    Map<String, Metric> metrics = new HashMap<>();
+    for (Map.Entry<String, SchemaEntry> entry : entries.entrySet()) {
+      Metric metric = parse(entry.getKey(), entry.getValue(), Metric.getClassSchema());
+      if (metric == null) {
+        continue;
+      }
+      setVersion(metric.getMetadata(), entry.getValue());
+      metrics.put(subjects.get(entry.getKey()), metric);
+    }
+    return metrics;
+  }
+
+  private Map<String, SchemaEntry> getLatestEntries(Collection<String> subjectNames) {
+    if (repo instanceof BatchReadRepository) {
+      return ((BatchReadRepository) repo).getLatestSchemas(subjectNames);
+    }
+    Map<String, SchemaEntry> entries = new HashMap<>();
+    for (String name : subjectNames) {
+      Subject subject = repo.lookup(name);
+      if (subject != null) {
+        entries.put(name, subject.latest());
+      }
+    }
+    return entries;
+  }
+
   private Subject getMetricSubject(CharSequence orgId, CharSequence metricName) {
     String subjectName = getMetricSubjectName(orgId, metricName);
     LOG.info("Got subject name: {}", subjectName);
@@ -264,21 +361,23 @@ public class SchemaStore {
 
   /**
    * Parse an Avro-encoded instance from the {@link SchemaEntry}, based on the specified schema.
+   * Entries that have already been parsed are copied from the {@link MetadataCache}.
    *
-   * @param entry  entry to parse, can be <tt>null</tt>
-   * @param schema schema to use when parsing, <b>cannot</b> be null.
+   * @param subject name of the subject from which the entry was read
+   * @param entry   entry to parse, can be <tt>null</tt>
+   * @param schema  schema to use when parsing, <b>cannot</b> be null.
    * @return the parsed schema entry or <tt>null</tt> if the entry was null
    * @throws IllegalArgumentException if the object could not be parsed
    */
-  private <T> T parse(SchemaEntry entry, Schema schema) throws IllegalArgumentException {
-    if (entry == null) {
-      return null;
-    }
-    try {
-      return SchemaNameUtils.readFromString(entry.getSchema(), schema);
-    } catch (IOException e) {
-      throw new IllegalArgumentException("Failed to parse organization schema!", e);
-    }
+  private <T> T parse(String subject, SchemaEntry entry, Schema schema)
+    throws IllegalArgumentException {
+    return cache.get(repo, subject, entry, schema, e -> {
+      try {
+        return StoredFormat.read(e.getSchema(), schema);
+      } catch (IOException ioe) {
+        throw new IllegalArgumentException("Failed to parse organization schema!", ioe);
+      }
+    });
   }
 
   /**
@@ -9,7 +9,6 @@ import io.fineo.schema.exception.SchemaNotFoundException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Predicate;
 
 public class SchemaUtils {
 
@@ -38,10 +37,6 @@ public class SchemaUtils {
     return metricMetadata.getAliasValues().contains(alias);
   }
 
-  static Predicate<Map.Entry<String, OrgMetricMetadata>> metricHasAlias(String name) {
-    return nameToOrgMetric -> hasAlias(nameToOrgMetric.getValue(), name);
-  }
-
   public static Optional<String> getFieldInRecord(Record record, Collection<String> possibleNames) {
     return possibleNames == null ?
            Optional.empty() :
@@ -13,8 +13,10 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -25,25 +27,65 @@ import static java.util.stream.Collectors.toList;
 /**
  * Actually do the management of getting things from the {@link SchemaStore} for you and packaging
  * it in easy to use ways.
+ * <p>
+ * The org metadata is read once, when the clerk is created, and backs the clerk and any encoder
+ * factory it creates until the clerk is {@link #refresh() refreshed}. Metrics are read from the
+ * store each time they are requested, unless the clerk is a {@link #snapshot(SchemaStore,
+ * String) snapshot}, in which case each metric is only read the first time it is requested
+ * (until the next refresh), so every lookup sees a consistent version of the schema.
+ * </p>
  */
 public class StoreClerk {
 
   private static final Logger LOG = LoggerFactory.getLogger(StoreClerk.class);
   private final SchemaStore store;
   private final String orgId;
-  private final OrgMetadata metadata;
+  private OrgMetadata metadata;
+  // version of the org metadata, as it was read from the store
+  private String version;
+  // metrics we have read since the last refresh, by canonical name. Only used in snapshots.
+  private final Map<String, io.fineo.internal.customer.Metric> metrics;
 
   public StoreClerk(SchemaStore store, String orgId) {
+    this(store, orgId, false);
+  }
+
+  private StoreClerk(SchemaStore store, String orgId, boolean snapshot) {
     this.store = store;
     this.orgId = orgId;
+    this.metrics = snapshot ? new HashMap<>() : null;
+    refresh();
+  }
+
+  /**
+   * Create a clerk that only reads the org and each metric from the store once, until it is
+   * {@link #refresh() refreshed}.
+   */
+  public static StoreClerk snapshot(SchemaStore store, String orgId) {
+    return new StoreClerk(store, orgId, true);
+  }
+
+  /**
+   * Read the latest org metadata from the store and forget any metrics read so far. Encoder
+   * factories created before the refresh still use the previous org metadata, so they should
+   * be recreated.
+   */
+  public void refresh() {
     this.metadata = Preconditions
       .checkNotNull(store.getOrgMetadata(orgId), "No schema stored for org: %s", orgId);
+    this.version = metadata.getMetadata().getVersion();
+    if (this.metrics != null) {
+      this.metrics.clear();
+    }
   }
 
   public AvroSchemaEncoderFactory getEncoderFactory() throws
     SchemaNotFoundException {
-    OrgMetadata orgMetadata = store.getOrgMetadata(orgId);
-    return new AvroSchemaEncoderFactory(new StoreClerk(store, orgId), orgMetadata);
+    return new AvroSchemaEncoderFactory(this, metadata);
+  }
+
+  SchemaStore getStore() {
+    return store;
   }
 
   public List<String> getUserVisibleMetricNames() {
@@ -51,12 +93,21 @@ public class StoreClerk {
   }
 
   public List<Metric> getMetrics() {
+    Map<String, io.fineo.internal.customer.Metric> metrics = getUnderlyingMetrics();
     return collectElementsForFields(metadata, (metricCname, metricUserName, aliases) -> {
-      io.fineo.internal.customer.Metric metric = store.getMetricMetadata(orgId, metricCname);
-      return new Metric(metricUserName, metric, orgId, aliases);
+      io.fineo.internal.customer.Metric metric = metrics.get(metricCname);
+      // not found in the batch, so read it on its own to fail the same way as a single read
+      return metric == null ?
+             newMetric(metricCname, metricUserName, aliases) :
+             new Metric(metricUserName, metric, orgId, aliases, store);
     });
   }
 
+  private Metric newMetric(String metricCname, String metricUserName, List<String> aliases) {
+    io.fineo.internal.customer.Metric metric = getUnderlyingMetric(metricCname);
+    return new Metric(metricUserName, metric, orgId, aliases, store);
+  }
+
   public Map<String, String> getMetricIdsToNames() {
     Map<String, OrgMetricMetadata> metrics = metadata.getMetrics();
     if (metrics == null) {
@@ -85,26 +136,47 @@ public class StoreClerk {
   public Metric getMetricForUserNameOrAlias(String metricAliasName) throws SchemaNotFoundException {
     LOG.debug("Reading metric: {} from store", metricAliasName);
     LOG.trace("Got metric metadata: \n{}", metadata);
-    String expected = store.getMetricCNameFromAlias(metadata, metricAliasName);
+    String expected = AliasIndex.forOrg(store, version, metadata).getCanonicalName(metricAliasName);
     LOG.debug("Got metric cname: {}", expected);
-    Metric foundMetric = collectElementsForFields(metadata, (metricCname, metricUserName,
-      metricAliases) -> {
-      if (expected != metricCname) {
-        return null;
-      }
-
-      io.fineo.internal.customer.Metric metric = store.getMetricMetadata(orgId, metricCname);
-      return new Metric(metricUserName, metric, orgId, metricAliases);
-    }).stream().findFirst().orElse(null);
+    Metric foundMetric = expected == null ? null :
+                         visitField(expected, metadata.getMetrics().get(expected),
+                           orgMetricWrapper(metadata), this::newMetric);
     LOG.debug("Found metric for cname");
     SchemaUtils.checkFound(foundMetric, metricAliasName, "metric");
     return foundMetric;
   }
 
   public Metric getMetricForCanonicalName(String metricId) {
-    io.fineo.internal.customer.Metric metric = store.getMetricMetadata(orgId, metricId);
+    io.fineo.internal.customer.Metric metric = getUnderlyingMetric(metricId);
     OrgMetricMetadata metadata = this.metadata.getMetrics().get(metricId);
-    return new Metric(metadata.getDisplayName(), metric, orgId, metadata.getAliasValues());
+    return new Metric(metadata.getDisplayName(), metric, orgId, metadata.getAliasValues(),
+      store);
+  }
+
+  /**
+   * @return all the metrics in the org, read together
+   */
+  private Map<String, io.fineo.internal.customer.Metric> getUnderlyingMetrics() {
+    if (metadata.getMetrics() == null) {
+      return Collections.emptyMap();
+    }
+    Set<String> cnames = metadata.getMetrics().keySet();
+    if (metrics == null) {
+      return store.getMetricMetadata(orgId, cnames);
+    }
+    List<String> missing = cnames.stream().filter(cname -> !metrics.containsKey(cname))
+                                 .collect(toList());
+    if (!missing.isEmpty()) {
+      metrics.putAll(store.getMetricMetadata(orgId, missing));
+    }
+    return metrics;
+  }
+
+  private io.fineo.internal.customer.Metric getUnderlyingMetric(String metricCname) {
+    if (metrics == null) {
+      return store.getMetricMetadata(orgId, metricCname);
+    }
+    return metrics.computeIfAbsent(metricCname, cname -> store.getMetricMetadata(orgId, cname));
   }
 
   public Tenant getTenat() {
@@ -139,8 +211,11 @@ public class StoreClerk {
     private final io.fineo.internal.customer.Metric metric;
     private final List<String> aliases;
     private Schema schema;
-    private Map<String, String> reverseAliases;
+    private AliasIndex fieldAliases;
     private final String orgId;
+    private final SchemaStore store;
+    // version of the metric, as it was read from the store
+    private final String version;
 
     /**
      * Advanced use only! Create a Metric, but only with an underlying schema metric. This means
@@ -153,12 +228,14 @@ public class StoreClerk {
      * @return a 'stunted' Metric
      */
     public static Metric metricOnlyFunctions(io.fineo.internal.customer.Metric metric) {
-      return new Metric(null, metric, null, null);
+      return new Metric(null, metric, null, null, null);
     }
 
     private Metric(String userName, io.fineo.internal.customer.Metric metric, String orgId,
-      List<String> aliases) {
+      List<String> aliases, SchemaStore store) {
       this.orgId = orgId;
+      this.store = store;
+      this.version = store == null ? null : metric.getMetadata().getMeta().getVersion();
       this.userName = userName;
       this.metric = metric;
       this.aliases = aliases;
@@ -249,10 +326,11 @@ public class StoreClerk {
       if (AvroSchemaProperties.IS_BASE_FIELD.test(fieldName)) {
         return fieldName;
       }
-      if (this.reverseAliases == null) {
-        this.reverseAliases = AvroSchemaManager.getAliasRemap(metric);
+      if (this.fieldAliases == null) {
+        this.fieldAliases = store == null ? AliasIndex.forMetric(metric) :
+                            AliasIndex.forMetric(store, version, orgId, metric);
       }
-      return this.reverseAliases.get(fieldName);
+      return this.fieldAliases.getCanonicalName(fieldName);
     }
 
     public String getOrgId() {
@@ -399,7 +477,11 @@ public class StoreClerk {
 
   private static <T> List<T> collectElementsForFields(OrgMetadata meta,
     FieldInstanceVisitor<T> func) {
-    return collectElementsForFields(new MetadataWrapper<OrgMetricMetadata>() {
+    return collectElementsForFields(orgMetricWrapper(meta), func);
+  }
+
+  private static MetadataWrapper<OrgMetricMetadata> orgMetricWrapper(OrgMetadata meta) {
+    return new MetadataWrapper<OrgMetricMetadata>() {
       @Override
       public Map<String, OrgMetricMetadata> getFields() {
         return meta.getMetrics();
@@ -414,7 +496,7 @@ public class StoreClerk {
       public List<String> getAliases(OrgMetricMetadata field) {
         return field.getAliasValues();
       }
-    }, func);
+    };
   }
 
 
@@ -426,23 +508,26 @@ public class StoreClerk {
     }
     return meta.getFields().entrySet()
                .stream()
-               .filter(entry -> !AvroSchemaProperties.BASE_FIELDS_KEY.equals(entry.getKey()))
-               .map(entry -> {
-                 String cname = entry.getKey();
-                 FIELD_TYPE field = entry.getValue();
-                 String userName = meta.getDisplayName(field);
-                 if (userName == null) {
-                   return null;
-                 }
-                 List<String> aliases = meta.getAliases(field);
-                 List<String> remaining = new ArrayList<>(aliases);
-                 remaining.remove(userName);
-                 return func.call(cname, userName, remaining);
-               })
+               .map(entry -> visitField(entry.getKey(), entry.getValue(), meta, func))
                .filter(name -> name != null)
                .collect(toList());
   }
 
+  private static <T, FIELD_TYPE> T visitField(String cname, FIELD_TYPE field,
+    MetadataWrapper<FIELD_TYPE> meta, FieldInstanceVisitor<T> func) {
+    if (field == null || AvroSchemaProperties.BASE_FIELDS_KEY.equals(cname)) {
+      return null;
+    }
+    String userName = meta.getDisplayName(field);
+    if (userName == null) {
+      return null;
+    }
+    List<String> aliases = meta.getAliases(field);
+    List<String> remaining = new ArrayList<>(aliases);
+    remaining.remove(userName);
+    return func.call(cname, userName, remaining);
+  }
+
   private interface MetadataWrapper<T> {
     Map<String, T> getFields();
 
@@ -0,0 +1,56 @@
+package org.apache.avro.file;
+
+import io.fineo.avro.writer.BlockMetadata;
+import io.fineo.schema.avro.SchemaNameUtils;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+import java.util.function.Predicate;
+
+/**
+ * Filters for the blocks to read from a multi-schema file, based on the index in the file's
+ * footer. Blocks without the required metadata (e.g. from version 1 files) always match, since
+ * they cannot be excluded without reading the block.
+ */
+public class MultiSchemaBlockFilters {
+
+  private MultiSchemaBlockFilters() {
+    // private ctor for util class
+  }
+
+  public static Predicate<BlockMetadata> all() {
+    return block -> true;
+  }
+
+  /**
+   * @param schema schema of the records to read
+   * @return filter matching blocks with the same parsing fingerprint as the schema
+   */
+  public static Predicate<BlockMetadata> forSchema(Schema schema) {
+    long fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+    return block -> block.getFingerprint() == null || block.getFingerprint() == fingerprint;
+  }
+
+  public static Predicate<BlockMetadata> forFullName(String fullName) {
+    return block -> block.getFullName() == null || block.getFullName().equals(fullName);
+  }
+
+  /**
+   * @param orgId          id of the org
+   * @param metricCanonicalName canonical name of the metric
+   * @return filter matching blocks of records for the metric
+   */
+  public static Predicate<BlockMetadata> forMetric(String orgId, String metricCanonicalName) {
+    return forFullName(SchemaNameUtils.getCustomerSchemaFullName(orgId, metricCanonicalName));
+  }
+
+  /**
+   * @param start earliest timestamp, inclusive
+   * @param end   latest timestamp, inclusive
+   * @return filter matching blocks that may have records with timestamps in the range
+   */
+  public static Predicate<BlockMetadata> forTimeRange(long start, long end) {
+    return block -> (block.getMaxTimestamp() == null || block.getMaxTimestamp() >= start) &&
+                    (block.getMinTimestamp() == null || block.getMinTimestamp() <= end);
+  }
+}
@@ -0,0 +1,73 @@
+package org.apache.avro.file;
+
+import com.google.common.collect.ImmutableMap;
+import io.fineo.schema.avro.SchemaNameUtils;
+import org.apache.avro.Schema;
+
+import java.util.Map;
+
+/**
+ * Chooses the compression codec for the block of each schema in a multi-schema file. The codec is
+ * chosen when the first record of the schema is written.
+ * <p>
+ * Any of the codecs supported by Avro can be used: <tt>null</tt>, <tt>deflate</tt>,
+ * <tt>snappy</tt>, <tt>bzip2</tt> and <tt>xz</tt> (see {@link CodecFactory#fromString(String)}).
+ * Readers discover the codec from the header of each block, so blocks in the same file can use
+ * different codecs.
+ * </p>
+ */
+@FunctionalInterface
+public interface MultiSchemaCodecPolicy {
+
+  /**
+   * @param schema schema of the block
+   * @return the codec for the block, or <tt>null</tt> to write the block uncompressed
+   */
+  CodecFactory getCodec(Schema schema);
+
+  /**
+   * @param codec codec for every block
+   */
+  static MultiSchemaCodecPolicy all(CodecFactory codec) {
+    return schema -> codec;
+  }
+
+  /**
+   * Choose a codec based on the number of fields in the schema. Schemas with few fields tend to
+   * have small records that do not compress enough to be worth the cost of a slower codec.
+   *
+   * @param minFields minimum number of fields in a large schema
+   * @param small     codec for schemas with fewer than <tt>minFields</tt> fields
+   * @param large     codec for schemas with at least <tt>minFields</tt> fields
+   */
+  static MultiSchemaCodecPolicy byFieldCount(int minFields, CodecFactory small,
+    CodecFactory large) {
+    return schema -> schema.getType() == Schema.Type.RECORD &&
+                     schema.getFields().size() >= minFields ? large : small;
+  }
+
+  /**
+   * @param codecs       codec by full name of the schema
+   * @param defaultCodec codec for schemas that are not in the map
+   */
+  static MultiSchemaCodecPolicy perSchema(Map<String, CodecFactory> codecs,
+    CodecFactory defaultCodec) {
+    Map<String, CodecFactory> copy = ImmutableMap.copyOf(codecs);
+    return schema -> copy.getOrDefault(schema.getFullName(), defaultCodec);
+  }
+
+  /**
+   * Use a specific codec for a single metric
+   *
+   * @param orgId        org of the metric
+   * @param metricId     canonical name of the metric
+   * @param codec        codec for the metric
+   * @param defaultCodec codec for the other schemas
+   */
+  static MultiSchemaCodecPolicy forMetric(String orgId, String metricId, CodecFactory codec,
+    CodecFactory defaultCodec) {
+    return perSchema(
+      ImmutableMap.of(SchemaNameUtils.getCustomerSchemaFullName(orgId, metricId), codec),
+      defaultCodec);
+  }
+}
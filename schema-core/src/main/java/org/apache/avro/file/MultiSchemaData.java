@@ -1,14 +1,38 @@
 package org.apache.avro.file;
 
+import java.util.Arrays;
+
 /**
  *
  */
 public class MultiSchemaData {
-  private static final int VERSION = 1;
-  public static final byte[] MAGIC = new byte[]{(byte) '1', (byte) 'c', (byte) 'k', VERSION};
+  /** Footer has only the length of each block */
+  static final int VERSION_1 = 1;
+  /** Footer has an index of the schema and contents of each block */
+  static final int VERSION_2 = 2;
+  private static final int VERSION = VERSION_2;
+  public static final byte[] MAGIC = magic(VERSION);
   public static final int OFFSET_COUNT_LENGTH = 4;
 
   private MultiSchemaData(){
     //private ctor for util class
   }
+
+  private static byte[] magic(int version) {
+    return new byte[]{(byte) '1', (byte) 'c', (byte) 'k', (byte) version};
+  }
+
+  /**
+   * @param magic first {@link #MAGIC} length bytes of a file
+   * @return the version of the multi-schema file, or <tt>-1</tt> if it is not a multi-schema file
+   * that can be read
+   */
+  static int getVersion(byte[] magic) {
+    for (int version = VERSION_1; version <= VERSION; version++) {
+      if (Arrays.equals(magic, magic(version))) {
+        return version;
+      }
+    }
+    return -1;
+  }
 }
@@ -1,99 +1,110 @@
 package org.apache.avro.file;
 
-import io.fineo.avro.writer.MultiContents;
+import io.fineo.avro.writer.BlockMetadata;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericContainer;
 import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.io.Decoder;
-import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The counterpoint to the {@link MultiSchemaFileWriter}
+ * <p>
+ * Optionally, only some of the blocks are read, based on the index in the file footer (see
+ * {@link MultiSchemaBlockFilters}). Blocks that do not match the filter are never opened.
+ * Similarly, only some of the fields in each block can be read with
+ * {@link #setProjection(MultiSchemaProjection)}.
+ * </p>
+ * <p>
+ * Records read with {@link #next(Object)} only reuse the passed record if it has the same schema
+ * as the records in the current block. To scan a file without allocating a record per row, enable
+ * {@link #setReuseRecords(boolean)} so each schema's records are read into the same instance.
+ * </p>
+ * <p>
+ * The input is closed once all the records have been read, with {@link #next()} or the
+ * {@link #iterator()}. Otherwise, the reader (or its {@link #stream()}) must be closed.
+ * </p>
  */
-public class MultiSchemaFileReader<D> {
+public class MultiSchemaFileReader<D> implements Closeable {
   private static final Log LOG = LogFactory.getLog(MultiSchemaFileReader.class);
   private final SeekableInput input;
   private final GenericDatumReader<D> datum;
-  private List<Block> blocks;
+  private List<MultiSchemaFooter.BlockLocation> locations;
+  /** index of the next block to read */
+  private int nextBlock;
   private Block currentBlock;
+  private MultiSchemaProjection projection = MultiSchemaProjection.all();
+  private boolean reuseRecords;
+  /** last record read for each schema, when reusing records */
+  private final Map<Schema, D> reusable = new HashMap<>();
 
   public MultiSchemaFileReader(SeekableInput input)
+    throws IOException {
+    this(input, MultiSchemaBlockFilters.all());
+  }
+
+  public MultiSchemaFileReader(SeekableInput input, Predicate<BlockMetadata> filter)
     throws IOException {
     this.input = input;
-    initialize();
+    initialize(filter);
     this.datum = new GenericDatumReader<>();
   }
 
-  private void initialize() throws IOException {
-    // ensure that the magic is the first few bytes
-    byte[] magic = new byte[MultiSchemaData.MAGIC.length];
-    input.read(magic, 0, magic.length);
-    if (!Arrays.equals(magic, MultiSchemaData.MAGIC)) {
-      throw new IllegalArgumentException("File is not a mutli-schema file!");
-    }
-
-    // seek to the end and read in a integer
-    long length = input.length();
-    input.seek(length - MultiSchemaData.OFFSET_COUNT_LENGTH);
-
-    // read in the offset of the metadata
-    byte[] bytes = new byte[MultiSchemaData.OFFSET_COUNT_LENGTH];
-    input.read(bytes, 0, bytes.length);
-    // bytebuffer is better than DataInputStream here b/c DIS chokes on some lengths when reading
-    // back 4 bytes...yeah, I dunno.
-    ByteBuffer buf = ByteBuffer.wrap(bytes);
-    int metaOffset = buf.getInt();
-    input.seek(metaOffset);
-
-    // read in the metadata
-    MultiContents meta = readOffsets(input);
-    blocks = new ArrayList<>(meta.getOffsets().size());
-    // first offset skips past the magic
-    long start = magic.length;
-    // first offset skips past the magic
-    for (int i = 0; i < meta.getOffsets().size(); i++) {
-      long offset = meta.getOffsets().get(i);
-      blocks.add(new Block(start, offset));
-      start += offset;
-    }
-    // seek back to the beginning of the file
-    input.seek(magic.length);
+  private void initialize(Predicate<BlockMetadata> filter) throws IOException {
+    MultiSchemaFooter footer = MultiSchemaFooter.read(input);
+    locations = footer.getBlocks(filter);
   }
 
-  private MultiContents readOffsets(SeekableInput input) throws IOException {
-    InputStream wis = new WrapperInputStream(input);
-    SpecificDatumReader<MultiContents> contents =
-      new SpecificDatumReader<>(MultiContents.getClassSchema());
-    Decoder dec = DecoderFactory.get().binaryDecoder(wis, null);
-    return contents.read(null, dec);
+  /**
+   * Only read some fields of each record. Must be set before reading any records.
+   *
+   * @param projection fields to read
+   */
+  public MultiSchemaFileReader<D> setProjection(MultiSchemaProjection projection) {
+    this.projection = projection;
+    return this;
   }
 
-  private class WrapperInputStream extends InputStream {
-
-    private final SeekableInput delegate;
-    private byte[] oneByte = new byte[1];
+  /**
+   * Reuse a single record instance for all the records of each schema. Each record returned from
+   * {@link #next()} is only valid until the next record with the same schema is read.
+   *
+   * @param reuseRecords <tt>true</tt> to reuse records
+   */
+  public MultiSchemaFileReader<D> setReuseRecords(boolean reuseRecords) {
+    this.reuseRecords = reuseRecords;
+    return this;
+  }
 
-    public WrapperInputStream(SeekableInput input) {
-      this.delegate = input;
-    }
+  /**
+   * @return the metadata of the blocks that will be read
+   */
+  public List<BlockMetadata> getBlockMetadata() {
+    return locations.stream().map(MultiSchemaFooter.BlockLocation::getMetadata)
+                    .collect(Collectors.toList());
+  }
 
-    @Override
-    public int read() throws IOException {
-      int n = delegate.read(oneByte, 0, 1);
-      if (n == 1) {
-        return oneByte[0] & 0xff;
-      } else {
-        return n;
-      }
-    }
+  /**
+   * @return <tt>true</tt> if there are more records to read
+   * @throws IOException if the next block cannot be read
+   */
+  public boolean hasNext() throws IOException {
+    return advance() != null;
   }
 
   public D next() throws IOException {
@@ -101,42 +112,107 @@ public class MultiSchemaFileReader<D> {
   }
 
   public D next(D reuse) throws IOException {
-    getNextBlock();
+    Block block = advance();
     // no more blocks, done!
-    if (currentBlock == null) {
-      input.close();
+    if (block == null) {
+      close();
       return null;
     }
-    return currentBlock.next(reuse);
+    return block.next(reuse);
   }
 
-  private void getNextBlock() throws IOException {
-    if (currentBlock == null) {
-      if (blocks.size() == 0) {
-        return;
+  /**
+   * Move to the next block with records to read, skipping any empty blocks
+   *
+   * @return the block with the next record, or <tt>null</tt> if there are no more records
+   */
+  private Block advance() throws IOException {
+    while (currentBlock == null || currentBlock.exhausted()) {
+      if (nextBlock >= locations.size()) {
+        currentBlock = null;
+        return null;
+      }
+      currentBlock = new Block(locations.get(nextBlock++));
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Moving to next block: " + currentBlock);
       }
-      currentBlock = blocks.remove(0);
-      LOG.info("Moving to next block: " + currentBlock);
       currentBlock.open(input);
     }
+    return currentBlock;
+  }
 
-    // skip to the oneByte block of this one is exhausted
-    if (currentBlock.exhausted()) {
-      currentBlock = null;
-      getNextBlock();
-    }
+  /**
+   * Close the input. No more records are read after the reader is closed. Safe to call more than
+   * once, including after all the records have been read.
+   *
+   * @throws IOException if the input cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    this.currentBlock = null;
+    this.nextBlock = locations.size();
+    input.close();
+  }
+
+  /**
+   * @return an iterator over the remaining records, which closes the reader once they have all
+   * been read. Errors reading the file are thrown as {@link AvroRuntimeException}s, like
+   * {@link DataFileReader#next()}.
+   */
+  public Iterator<D> iterator() {
+    return new Iterator<D>() {
+      @Override
+      public boolean hasNext() {
+        try {
+          if (MultiSchemaFileReader.this.hasNext()) {
+            return true;
+          }
+          close();
+          return false;
+        } catch (IOException e) {
+          throw new AvroRuntimeException(e);
+        }
+      }
+
+      @Override
+      public D next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        try {
+          return MultiSchemaFileReader.this.next();
+        } catch (IOException e) {
+          throw new AvroRuntimeException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * @return a sequential stream of the remaining records, backed by {@link #iterator()}. Closing
+   * the stream closes the reader.
+   */
+  public Stream<D> stream() {
+    return StreamSupport.stream(
+      Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL),
+      false).onClose(() -> {
+      try {
+        close();
+      } catch (IOException e) {
+        throw new AvroRuntimeException(e);
+      }
+    });
   }
 
   private class Block {
 
-    private final long offset;
-    private final long length;
+    private final MultiSchemaFooter.BlockLocation location;
     private DataFileReader<D> reader;
-    private SeekableInput limited;
+    private Schema schema;
+    private D reuse;
 
-    public Block(long offset, Long length) {
-      this.offset = offset;
-      this.length = length;
+    public Block(MultiSchemaFooter.BlockLocation location) {
+      this.location = location;
     }
 
     public boolean exhausted() throws IOException {
@@ -145,23 +221,40 @@ public class MultiSchemaFileReader<D> {
 
     public void open(SeekableInput input) throws IOException {
       // setup a new reader using the same datum reader
-      this.limited = new TranslatedSeekableInput(offset, length + offset, input);
+      SeekableInput limited = location.slice(input);
       // have to remove any assumptions about the expected schema because we are changing schemas
       datum.setExpected(null);
       reader = new DataFileReader<D>(limited, datum);
+      // read with only the projected fields of the block's schema
+      this.schema = projection.project(reader.getSchema());
+      if (reuseRecords) {
+        this.reuse = reusable.get(schema);
+        // each block parses its own copy of the schema, but avro only reuses records with the
+        // same schema instance, so read with the (equal) schema of the pooled record
+        if (reuse instanceof GenericContainer) {
+          this.schema = ((GenericContainer) reuse).getSchema();
+        }
+      }
+      datum.setExpected(schema);
     }
 
     public D next(D reuse) throws IOException {
+      // avro only reuses records with the same schema instance, so don't bother passing others
+      if (!(reuse instanceof GenericContainer) ||
+          ((GenericContainer) reuse).getSchema() != schema) {
+        reuse = this.reuse;
+      }
       D next = reader.next(reuse);
+      if (reuseRecords && next != this.reuse) {
+        this.reuse = next;
+        reusable.put(schema, next);
+      }
       return next;
     }
 
     @Override
     public String toString() {
-      return "Block{" +
-             "offset=" + offset +
-             ", length=" + length +
-             '}';
+      return location.toString();
     }
   }
 }
@@ -1,108 +1,316 @@
 package org.apache.avro.file;
 
-import io.fineo.avro.writer.MultiContents;
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingOutputStream;
+import io.fineo.avro.writer.BlockMetadata;
+import io.fineo.avro.writer.MultiSchemaIndex;
+import io.fineo.schema.store.AvroSchemaProperties;
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificDatumWriter;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
 
 /**
  * A light wrapper around a standard Avro file writer that will write a multiple schemas to an
- * in-memory output stream. All data is buffered in memory, so you need to be careful to check
- * the size periodically to make sure you have enough memory.
+ * in-memory output stream. By default, all data is buffered in memory, so you need to be careful
+ * to check the size periodically to make sure you have enough memory.
+ * <p>
+ * Alternatively, the data for each schema can be spilled to a temporary file (see
+ * {@link #setSpillDirectory(File)}), so only a small, fixed amount of data is kept in memory
+ * regardless of how many records are written. Either way, the file can be written directly to a
+ * channel with {@link #close(WritableByteChannel)}, rather than building the whole file in
+ * memory, or into an exactly sized (possibly direct or pooled) buffer with
+ * {@link #close(IntFunction)}.
+ * </p>
+ * <p>
+ * Records for each schema are grouped into Avro data blocks, which are written (and compressed)
+ * when they reach the sync interval (see {@link #setSyncInterval(int)}) or the maximum number of
+ * records per block (see {@link #setRecordsPerBlock(int)}). Records in a block that has not yet
+ * been written are not counted in {@link #getBytesWritten()}, so there can be up to a sync
+ * interval of additional data buffered for each schema. Each schema's blocks can be compressed with
+ * a different codec (see {@link #setCodecPolicy(MultiSchemaCodecPolicy)}).
+ * </p>
+ * <p>
+ * The footer of the file indexes each schema's block by the schema's fingerprint and full name,
+ * along with the number of records and the range of their timestamps (from the
+ * {@link AvroSchemaProperties#BASE_FIELDS_KEY base fields}, if the schema has them), so readers
+ * can skip blocks they do not need.
+ * </p>
  */
 public class MultiSchemaFileWriter<D extends GenericRecord> {
-  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+
   private final DatumWriter<D> writer;
-  private CodecFactory codec;
+  private MultiSchemaCodecPolicy codecs = MultiSchemaCodecPolicy.all(null);
+  private int syncInterval = DataFileConstants.DEFAULT_SYNC_INTERVAL;
+  private int recordsPerBlock = -1;
+  private File spillDirectory;
   private boolean isOpen = false;
   private Map<Schema, Writer> writers = new HashMap<>();
-  private List<Long> offsets = new ArrayList<>();
+  private List<BlockMetadata> blocks = new ArrayList<>();
 
   public MultiSchemaFileWriter(DatumWriter<D> datumWriter) {
     this.writer = datumWriter;
   }
 
+  /**
+   * @param c codec for the blocks of every schema
+   */
   public MultiSchemaFileWriter setCodec(CodecFactory c) {
+    return setCodecPolicy(MultiSchemaCodecPolicy.all(c));
+  }
+
+  /**
+   * Choose the codec for the blocks of each schema. Defaults to no compression.
+   *
+   * @param policy codec for each schema
+   */
+  public MultiSchemaFileWriter setCodecPolicy(MultiSchemaCodecPolicy policy) {
+    assertNotOpen();
+    this.codecs = policy;
+    return this;
+  }
+
+  /**
+   * Set the approximate number of uncompressed bytes in each block, as with
+   * {@link DataFileWriter#setSyncInterval(int)}. Defaults to
+   * {@link DataFileConstants#DEFAULT_SYNC_INTERVAL}.
+   *
+   * @param syncInterval approximate number of bytes in each block
+   */
+  public MultiSchemaFileWriter setSyncInterval(int syncInterval) {
     assertNotOpen();
-    this.codec = c;
+    this.syncInterval = syncInterval;
+    return this;
+  }
+
+  /**
+   * Set the maximum number of records in each block. Blocks are also written when they reach the
+   * sync interval, so they may have fewer records. By default, blocks are limited only by the sync
+   * interval.
+   *
+   * @param recordsPerBlock maximum number of records in each block, or <tt>-1</tt> for no limit
+   */
+  public MultiSchemaFileWriter setRecordsPerBlock(int recordsPerBlock) {
+    assertNotOpen();
+    Preconditions.checkArgument(recordsPerBlock > 0 || recordsPerBlock == -1,
+      "Records per block must be positive or -1, but was %s", recordsPerBlock);
+    this.recordsPerBlock = recordsPerBlock;
+    return this;
+  }
+
+  /**
+   * Spill the data for each schema to a temporary file in the directory, rather than keeping it
+   * in memory. Files are removed when the writer is closed.
+   *
+   * @param directory directory in which to create the temporary files
+   */
+  public MultiSchemaFileWriter setSpillDirectory(File directory) {
+    assertNotOpen();
+    this.spillDirectory = directory;
     return this;
   }
 
   public int getBytesWritten() {
-    return out.size() + writers.values()
-                               .stream()
-                               .map(writer -> writer.out)
-                               .filter(stream -> stream != null)
-                               .map(out -> out.size())
-                               .reduce(0, Integer::sum);
+    return (int) getDataLength();
   }
 
   public MultiSchemaFileWriter create() throws IOException {
     this.isOpen = true;
-    out.write(MultiSchemaData.MAGIC);
     return this;
   }
 
   public MultiSchemaFileWriter append(D record) throws IOException {
     assertOpen();
-    Schema schema = record.getSchema();
+    getWriter(record.getSchema()).append(record);
+    return this;
+  }
+
+  /**
+   * Append a record that has already been encoded as Avro binary with the schema, for example by
+   * {@link io.fineo.schema.store.AvroSchemaEncoder#encode(Encoder)}. The datum is copied, so the
+   * buffer can be reused as soon as this returns.
+   *
+   * @param schema    schema the record was encoded with
+   * @param datum     encoded record, from its position to its limit
+   * @param timestamp timestamp of the record, for the block index. Ignored if the schema does not
+   *                  have {@link AvroSchemaProperties#BASE_FIELDS_KEY base fields}
+   */
+  public MultiSchemaFileWriter appendEncoded(Schema schema, ByteBuffer datum, long timestamp)
+    throws IOException {
+    assertOpen();
+    getWriter(schema).appendEncoded(datum, timestamp);
+    return this;
+  }
+
+  private Writer getWriter(Schema schema) throws IOException {
     Writer writer = writers.get(schema);
     if (writer == null) {
       writer = createWriter(schema);
       writers.put(schema, writer);
     }
-    writer.append(record);
-    return this;
+    return writer;
   }
 
   private Writer createWriter(Schema schema) throws IOException {
-    return new Writer(schema, createDataFileWriter());
+    BlockBuffer buffer = spillDirectory == null ? new MemoryBuffer() : new FileBuffer(
+      File.createTempFile("multi-schema", ".avro", spillDirectory));
+    return new Writer(schema, createDataFileWriter(schema), buffer);
   }
 
-  private DataFileWriter<D> createDataFileWriter() {
+  private DataFileWriter<D> createDataFileWriter(Schema schema) {
     DataFileWriter<D> writer = new DataFileWriter<>(this.writer);
+    CodecFactory codec = codecs.getCodec(schema);
     if (codec != null) {
       writer.setCodec(codec);
     }
+    writer.setSyncInterval(syncInterval);
     return writer;
   }
 
+  /**
+   * Close the writer and build the file in memory
+   *
+   * @return the bytes of the file
+   * @throws IOException if the file cannot be written
+   */
   public byte[] close() throws IOException {
+    return close(ByteBuffer::allocate).array();
+  }
+
+  /**
+   * Close the writer and write the file into a buffer. The allocator is called with the exact
+   * length of the file, once all the data has been written, and can return any buffer (heap,
+   * direct or pooled) with at least that many bytes remaining. For example,
+   * <tt>close(ByteBuffer::allocateDirect)</tt>.
+   *
+   * @param allocator supplies a buffer with at least the requested number of bytes remaining
+   * @return the buffer from the allocator, with the position at the start of the file and the
+   * limit at the end of the file
+   * @throws IOException           if the file cannot be written
+   * @throws IllegalStateException if the writer is already closed
+   */
+  public ByteBuffer close(IntFunction<ByteBuffer> allocator) throws IOException {
+    assertNotClosed();
     this.isOpen = false;
-    // close and flush any open data
+    try {
+      byte[] index = finish();
+      long length = getDataLength() + index.length + MultiSchemaData.OFFSET_COUNT_LENGTH;
+      Preconditions.checkState(length <= Integer.MAX_VALUE,
+        "Multi-schema files cannot be larger than %s bytes, but have %s bytes", Integer.MAX_VALUE,
+        length);
+      ByteBuffer buffer = allocator.apply((int) length);
+      Preconditions.checkArgument(buffer.remaining() >= length,
+        "Buffer has %s bytes remaining, but the file is %s bytes", buffer.remaining(), length);
+      int start = buffer.position();
+      write(new ByteBufferChannel(buffer), index);
+      buffer.limit(buffer.position());
+      buffer.position(start);
+      return buffer;
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Close the writer and write the file to the channel. The channel is not closed.
+   *
+   * @param out channel to write the file to
+   * @throws IOException           if the file cannot be written
+   * @throws IllegalStateException if the writer is already closed
+   */
+  public void close(WritableByteChannel out) throws IOException {
+    assertNotClosed();
+    this.isOpen = false;
+    try {
+      write(out, finish());
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Close the writer for each schema, flushing any buffered records, so the length of the data is
+   * known.
+   *
+   * @return the encoded index of the blocks
+   */
+  private byte[] finish() throws IOException {
     for (Writer writer : writers.values()) {
-      int length = writer.close(out);
-      addMetadata(length);
-    }
-    // append the field map
-    MultiContents meta = new MultiContents(this.offsets);
-    SpecificDatumWriter<MultiContents> writer = new SpecificDatumWriter<>(MultiContents.class);
-    int metadataOffset = out.size();
-    Encoder enc = EncoderFactory.get().binaryEncoder(out, null);
+      blocks.add(writer.getMetadata(writer.close()));
+    }
+    long written = getDataLength();
+    Preconditions.checkState(written <= Integer.MAX_VALUE,
+      "Multi-schema files cannot be larger than %s bytes, but have %s bytes of data",
+      Integer.MAX_VALUE, written);
+
+    MultiSchemaIndex meta = new MultiSchemaIndex(this.blocks);
+    SpecificDatumWriter<MultiSchemaIndex> writer =
+      new SpecificDatumWriter<>(MultiSchemaIndex.class);
+    ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+    Encoder enc = EncoderFactory.get().binaryEncoder(metadata, null);
     writer.write(meta, enc);
     enc.flush();
+    return metadata.toByteArray();
+  }
 
-    ByteBuffer buf = ByteBuffer.allocate(4);
-    buf.putInt(metadataOffset);
-    out.write(buf.array());
-    out.close();
-    return out.toByteArray();
+  /**
+   * @return length of the magic and all the blocks, which is the offset of the index
+   */
+  private long getDataLength() {
+    long written = MultiSchemaData.MAGIC.length;
+    for (Writer writer : writers.values()) {
+      written += writer.buffer.getLength();
+    }
+    return written;
   }
 
-  private void addMetadata(long length) {
-    offsets.add(length);
+  private void write(WritableByteChannel out, byte[] index) throws IOException {
+    long written = writeFully(out, ByteBuffer.wrap(MultiSchemaData.MAGIC));
+    for (Writer writer : writers.values()) {
+      written += writer.buffer.transferTo(out);
+    }
+    // append the block index
+    writeFully(out, ByteBuffer.wrap(index));
+
+    ByteBuffer buf = ByteBuffer.allocate(MultiSchemaData.OFFSET_COUNT_LENGTH);
+    buf.putInt((int) written);
+    buf.flip();
+    writeFully(out, buf);
+  }
+
+  private void release() throws IOException {
+    for (Writer writer : writers.values()) {
+      writer.buffer.release();
+    }
+  }
+
+  private static long writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+    long written = 0;
+    while (buffer.hasRemaining()) {
+      written += out.write(buffer);
+    }
+    return written;
   }
 
   private void assertOpen() {
@@ -115,33 +323,224 @@ public class MultiSchemaFileWriter<D extends GenericRecord> {
       throw new AvroRuntimeException("already open");
   }
 
+  /**
+   * The blocks are only written once, and their buffers are released, when the writer is closed,
+   * so it cannot be closed again.
+   */
+  private void assertNotClosed() {
+    Preconditions.checkState(isOpen, "Writer is already closed");
+  }
+
   private class Writer {
     private final Schema schema;
     DataFileWriter<D> writer;
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final BlockBuffer buffer;
+    private int blockCount;
+    private final int baseFieldsPosition;
+    private final int timestampPosition;
+    private long recordCount;
+    private Long minTimestamp;
+    private Long maxTimestamp;
 
-    public Writer(Schema schema, DataFileWriter<D> writer) throws IOException {
+    public Writer(Schema schema, DataFileWriter<D> writer, BlockBuffer buffer) throws IOException {
       this.schema = schema;
       this.writer = writer;
-      writer.create(schema, out);
+      this.buffer = buffer;
+      writer.create(schema, buffer.getStream());
+
+      Schema.Field base = schema.getField(AvroSchemaProperties.BASE_FIELDS_KEY);
+      Schema.Field timestamp = base == null || base.schema().getType() != Schema.Type.RECORD ?
+                               null :
+                               base.schema().getField(AvroSchemaProperties.TIMESTAMP_KEY);
+      this.baseFieldsPosition = timestamp == null ? -1 : base.pos();
+      this.timestampPosition = timestamp == null ? -1 : timestamp.pos();
+    }
+
+    private void updateTimestamps(D record) {
+      if (baseFieldsPosition < 0) {
+        return;
+      }
+      GenericRecord base = (GenericRecord) record.get(baseFieldsPosition);
+      Object value = base == null ? null : base.get(timestampPosition);
+      if (value instanceof Long) {
+        updateTimestamps((long) (Long) value);
+      }
+    }
+
+    private void updateTimestamps(long ts) {
+      if (minTimestamp == null || ts < minTimestamp) {
+        minTimestamp = ts;
+      }
+      if (maxTimestamp == null || ts > maxTimestamp) {
+        maxTimestamp = ts;
+      }
+    }
+
+    public BlockMetadata getMetadata(long length) {
+      return BlockMetadata.newBuilder()
+                          .setLength(length)
+                          .setFingerprint(SchemaNormalization.parsingFingerprint64(schema))
+                          .setFullName(schema.getFullName())
+                          .setRecordCount(recordCount)
+                          .setMinTimestamp(minTimestamp)
+                          .setMaxTimestamp(maxTimestamp)
+                          .build();
     }
 
-    public int close(ByteArrayOutputStream destination) throws IOException {
+    /**
+     * @return the length of the data written for the schema
+     */
+    public long close() throws IOException {
       writer.close();
-      out.close();
-      destination.write(out.toByteArray());
-      int size = out.size();
-      // reset out so we don't double count the size of the array
-      out = null;
-      return size;
+      return buffer.getLength();
     }
 
     public void append(D record) throws IOException {
       // set the schema to write with
       MultiSchemaFileWriter.this.writer.setSchema(schema);
+      long written = buffer.getLength();
       writer.append(record);
-      //immediately flush
-      writer.flush();
+      updateTimestamps(record);
+      appended(written);
+    }
+
+    public void appendEncoded(ByteBuffer datum, long timestamp) throws IOException {
+      long written = buffer.getLength();
+      writer.appendEncoded(datum);
+      if (baseFieldsPosition >= 0) {
+        updateTimestamps(timestamp);
+      }
+      appended(written);
+    }
+
+    /**
+     * @param written length of the data before the record was appended
+     */
+    private void appended(long written) throws IOException {
+      recordCount++;
+      // the writer already wrote the block (including this record) at the sync interval
+      if (buffer.getLength() != written) {
+        blockCount = 0;
+      } else if (++blockCount == recordsPerBlock) {
+        writer.sync();
+        blockCount = 0;
+      }
+    }
+  }
+
+  /**
+   * Holds the data written for a single schema until the file is closed
+   */
+  private interface BlockBuffer {
+    OutputStream getStream();
+
+    /**
+     * @return number of bytes written to the stream so far
+     */
+    long getLength();
+
+    /**
+     * Write all the buffered data to the channel. The stream must already be closed.
+     *
+     * @return number of bytes written
+     */
+    long transferTo(WritableByteChannel out) throws IOException;
+
+    void release() throws IOException;
+  }
+
+  private static class MemoryBuffer extends ByteArrayOutputStream implements BlockBuffer {
+
+    @Override
+    public OutputStream getStream() {
+      return this;
+    }
+
+    @Override
+    public long getLength() {
+      return count;
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel out) throws IOException {
+      // write the buffer directly, rather than copying it with toByteArray()
+      return writeFully(out, ByteBuffer.wrap(buf, 0, count));
+    }
+
+    @Override
+    public void release() {
+      this.buf = new byte[0];
+      this.count = 0;
+    }
+  }
+
+  /**
+   * Writes into a buffer that is known to have enough space remaining
+   */
+  private static class ByteBufferChannel implements WritableByteChannel {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferChannel(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      int length = src.remaining();
+      buffer.put(src);
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static class FileBuffer implements BlockBuffer {
+
+    private final File file;
+    private final CountingOutputStream stream;
+
+    private FileBuffer(File file) throws IOException {
+      this.file = file;
+      this.stream = new CountingOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), SPILL_BUFFER_SIZE));
+    }
+
+    @Override
+    public OutputStream getStream() {
+      return stream;
+    }
+
+    @Override
+    public long getLength() {
+      return stream.getCount();
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel out) throws IOException {
+      try (FileChannel channel = new FileInputStream(file).getChannel()) {
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+          position += channel.transferTo(position, size - position, out);
+        }
+        return size;
+      }
+    }
+
+    @Override
+    public void release() throws IOException {
+      stream.close();
+      if (!file.delete()) {
+        file.deleteOnExit();
+      }
     }
   }
 }
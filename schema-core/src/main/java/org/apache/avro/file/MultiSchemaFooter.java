@@ -0,0 +1,175 @@
+package org.apache.avro.file;
+
+import io.fineo.avro.writer.BlockMetadata;
+import io.fineo.avro.writer.MultiContents;
+import io.fineo.avro.writer.MultiSchemaIndex;
+import org.apache.avro.Schema;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Location of each schema's block in a multi-schema file, as written by the
+ * {@link MultiSchemaFileWriter}. Version 1 files only record the length of each block; later
+ * versions also describe the schema and records in each block (see {@link BlockMetadata}).
+ */
+class MultiSchemaFooter {
+
+  private final List<BlockLocation> blocks;
+
+  private MultiSchemaFooter(List<BlockLocation> blocks) {
+    this.blocks = Collections.unmodifiableList(blocks);
+  }
+
+  public List<BlockLocation> getBlocks() {
+    return blocks;
+  }
+
+  /**
+   * @param filter blocks to include
+   * @return the blocks that match the filter, in the order they were written
+   */
+  public List<BlockLocation> getBlocks(Predicate<BlockMetadata> filter) {
+    return blocks.stream().filter(block -> filter.test(block.getMetadata()))
+                 .collect(Collectors.toList());
+  }
+
+  /**
+   * Read the footer from the input. Leaves the input positioned at the start of the first block.
+   *
+   * @param input multi-schema file to read
+   * @return the footer of the file
+   * @throws IOException if the input cannot be read
+   * @throws IllegalArgumentException if the input is not a multi-schema file
+   */
+  public static MultiSchemaFooter read(SeekableInput input) throws IOException {
+    // ensure that the magic is the first few bytes
+    byte[] magic = new byte[MultiSchemaData.MAGIC.length];
+    input.read(magic, 0, magic.length);
+    int version = MultiSchemaData.getVersion(magic);
+    if (version < 0) {
+      throw new IllegalArgumentException("File is not a mutli-schema file!");
+    }
+
+    // seek to the end and read in a integer
+    long length = input.length();
+    input.seek(length - MultiSchemaData.OFFSET_COUNT_LENGTH);
+
+    // read in the offset of the metadata
+    byte[] bytes = new byte[MultiSchemaData.OFFSET_COUNT_LENGTH];
+    input.read(bytes, 0, bytes.length);
+    // bytebuffer is better than DataInputStream here b/c DIS chokes on some lengths when reading
+    // back 4 bytes...yeah, I dunno.
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    int metaOffset = buf.getInt();
+    input.seek(metaOffset);
+
+    // read in the metadata
+    List<BlockMetadata> metadata;
+    if (version == MultiSchemaData.VERSION_1) {
+      metadata = readOffsets(input);
+    } else {
+      MultiSchemaIndex index = read(input, MultiSchemaIndex.getClassSchema());
+      metadata = index.getBlocks();
+    }
+    List<BlockLocation> blocks = new ArrayList<>(metadata.size());
+    // first offset skips past the magic
+    long start = magic.length;
+    for (BlockMetadata block : metadata) {
+      blocks.add(new BlockLocation(start, block));
+      start += block.getLength();
+    }
+    // seek back to the beginning of the file
+    input.seek(magic.length);
+    return new MultiSchemaFooter(blocks);
+  }
+
+  private static List<BlockMetadata> readOffsets(SeekableInput input) throws IOException {
+    MultiContents contents = read(input, MultiContents.getClassSchema());
+    List<BlockMetadata> blocks = new ArrayList<>(contents.getOffsets().size());
+    for (Long length : contents.getOffsets()) {
+      blocks.add(BlockMetadata.newBuilder().setLength(length).build());
+    }
+    return blocks;
+  }
+
+  private static <T> T read(SeekableInput input, Schema schema) throws IOException {
+    InputStream wis = new WrapperInputStream(input);
+    SpecificDatumReader<T> contents = new SpecificDatumReader<>(schema);
+    Decoder dec = DecoderFactory.get().binaryDecoder(wis, null);
+    return contents.read(null, dec);
+  }
+
+  private static class WrapperInputStream extends InputStream {
+
+    private final SeekableInput delegate;
+    private byte[] oneByte = new byte[1];
+
+    public WrapperInputStream(SeekableInput input) {
+      this.delegate = input;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int n = delegate.read(oneByte, 0, 1);
+      if (n == 1) {
+        return oneByte[0] & 0xff;
+      } else {
+        return n;
+      }
+    }
+  }
+
+  /**
+   * Location of a single schema's Avro data file within the multi-schema file
+   */
+  static class BlockLocation {
+    private final long offset;
+    private final long length;
+    private final BlockMetadata metadata;
+
+    BlockLocation(long offset, BlockMetadata metadata) {
+      this.offset = offset;
+      this.length = metadata.getLength();
+      this.metadata = metadata;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    public BlockMetadata getMetadata() {
+      return metadata;
+    }
+
+    /**
+     * @param input the whole multi-schema file
+     * @return a view of just this block in the input
+     */
+    public SeekableInput slice(SeekableInput input) throws IOException {
+      return new TranslatedSeekableInput(offset, offset + length, input);
+    }
+
+    @Override
+    public String toString() {
+      return "Block{" +
+             "offset=" + offset +
+             ", length=" + length +
+             ", schema=" + metadata.getFullName() +
+             '}';
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package org.apache.avro.file;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.fineo.schema.avro.SchemaNameUtils;
+import io.fineo.schema.store.AvroSchemaProperties;
+import io.fineo.schema.store.StoreClerk;
+import org.apache.avro.Schema;
+import org.codehaus.jackson.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fields to read from each schema in a multi-schema file. Blocks are read with a projection of the
+ * schema that they were written with, so the Avro decoder skips the unwanted fields rather than
+ * materializing them in each record.
+ * <p>
+ * The {@link AvroSchemaProperties#BASE_FIELDS_KEY base fields} are always read, if the schema has
+ * them. Requested fields that are not in a schema are ignored.
+ * </p>
+ */
+public class MultiSchemaProjection {
+
+  private static final MultiSchemaProjection ALL = new MultiSchemaProjection(null, null);
+
+  /** fields to read from every schema, or null if only reading fields from specific schemas */
+  private final Set<String> fields;
+  /** fields to read, by schema full name */
+  private final Map<String, Set<String>> schemaFields;
+  private final Map<Schema, Schema> projections = new ConcurrentHashMap<>();
+
+  private MultiSchemaProjection(Set<String> fields, Map<String, Set<String>> schemaFields) {
+    this.fields = fields;
+    this.schemaFields = schemaFields;
+  }
+
+  public static MultiSchemaProjection all() {
+    return ALL;
+  }
+
+  /**
+   * @param fieldNames names of the fields to read from every schema
+   */
+  public static MultiSchemaProjection fields(Collection<String> fieldNames) {
+    return new MultiSchemaProjection(ImmutableSet.copyOf(fieldNames), null);
+  }
+
+  /**
+   * @param fieldsBySchema names of the fields to read, by full name of the schema. Schemas
+   *                       without any specified fields are read entirely.
+   */
+  public static MultiSchemaProjection perSchema(Map<String, ? extends Collection<String>>
+    fieldsBySchema) {
+    ImmutableMap.Builder<String, Set<String>> fields = ImmutableMap.builder();
+    for (Map.Entry<String, ? extends Collection<String>> entry : fieldsBySchema.entrySet()) {
+      fields.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+    }
+    return new MultiSchemaProjection(null, fields.build());
+  }
+
+  /**
+   * Read the fields with the user-visible names (or aliases) from each of the metrics. Names that
+   * do not resolve to a field in a metric are ignored for that metric.
+   *
+   * @param metrics        metrics to read
+   * @param userFieldNames user-visible field names or aliases
+   */
+  public static MultiSchemaProjection forMetrics(Collection<StoreClerk.Metric> metrics,
+    Collection<String> userFieldNames) {
+    ImmutableMap.Builder<String, Set<String>> fields = ImmutableMap.builder();
+    for (StoreClerk.Metric metric : metrics) {
+      List<String> cnames = new ArrayList<>(userFieldNames.size());
+      for (String name : userFieldNames) {
+        String cname = metric.getCanonicalNameFromUserFieldName(name);
+        if (cname != null) {
+          cnames.add(cname);
+        }
+      }
+      fields.put(SchemaNameUtils.getCustomerSchemaFullName(metric.getOrgId(),
+        metric.getMetricId()), ImmutableSet.copyOf(cnames));
+    }
+    return new MultiSchemaProjection(null, fields.build());
+  }
+
+  /**
+   * @param writer schema with which a block was written
+   * @return the schema with which to read the block
+   */
+  public Schema project(Schema writer) {
+    if (this == ALL || writer.getType() != Schema.Type.RECORD) {
+      return writer;
+    }
+    return projections.computeIfAbsent(writer, this::buildProjection);
+  }
+
+  private Schema buildProjection(Schema writer) {
+    Set<String> keep = fields != null ? fields : schemaFields.get(writer.getFullName());
+    if (keep == null) {
+      return writer;
+    }
+    List<Schema.Field> projected = new ArrayList<>();
+    for (Schema.Field field : writer.getFields()) {
+      if (field.name().equals(AvroSchemaProperties.BASE_FIELDS_KEY) || keep
+        .contains(field.name())) {
+        projected.add(copy(field));
+      }
+    }
+    if (projected.size() == writer.getFields().size()) {
+      return writer;
+    }
+
+    Schema reader = Schema.createRecord(writer.getName(), writer.getDoc(), writer.getNamespace(),
+      writer.isError());
+    for (String alias : writer.getAliases()) {
+      reader.addAlias(alias);
+    }
+    for (Map.Entry<String, JsonNode> prop : writer.getJsonProps().entrySet()) {
+      reader.addProp(prop.getKey(), prop.getValue());
+    }
+    reader.setFields(projected);
+    return reader;
+  }
+
+  /**
+   * Fields cannot be shared between schemas, so we need a copy for the projected schema
+   */
+  private static Schema.Field copy(Schema.Field field) {
+    Schema.Field copy =
+      new Schema.Field(field.name(), field.schema(), field.doc(), field.defaultValue(),
+        field.order());
+    for (String alias : field.aliases()) {
+      copy.addAlias(alias);
+    }
+    for (Map.Entry<String, JsonNode> prop : field.getJsonProps().entrySet()) {
+      copy.addProp(prop.getKey(), prop.getValue());
+    }
+    return copy;
+  }
+}
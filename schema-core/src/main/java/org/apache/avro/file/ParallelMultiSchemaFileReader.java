@@ -0,0 +1,214 @@
+package org.apache.avro.file;
+
+import io.fineo.avro.writer.BlockMetadata;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a multi-schema file, as written by the {@link MultiSchemaFileWriter}, decoding the data
+ * for each schema concurrently. Each schema is stored as an independent Avro data file, so each is
+ * read from its own input (opened from the {@link SeekableInputSource}) with its own datum reader.
+ * <p>
+ * There is no ordering of records across schemas, but records for a single schema are read in the
+ * order they were written.
+ * </p>
+ * <p>
+ * Like the {@link MultiSchemaFileReader}, only the blocks that match a filter on the footer's
+ * index may be read (see {@link MultiSchemaBlockFilters}), and only some of the fields (see
+ * {@link #setProjection(MultiSchemaProjection)}).
+ * </p>
+ */
+public class ParallelMultiSchemaFileReader<D> {
+
+  private final SeekableInputSource source;
+  private final List<MultiSchemaFooter.BlockLocation> blocks;
+  private MultiSchemaProjection projection = MultiSchemaProjection.all();
+
+  public ParallelMultiSchemaFileReader(SeekableInputSource source) throws IOException {
+    this(source, MultiSchemaBlockFilters.all());
+  }
+
+  public ParallelMultiSchemaFileReader(SeekableInputSource source,
+    Predicate<BlockMetadata> filter) throws IOException {
+    this.source = source;
+    try (SeekableInput input = source.open()) {
+      this.blocks = MultiSchemaFooter.read(input).getBlocks(filter);
+    }
+  }
+
+  /**
+   * @return the number of schemas that will be read
+   */
+  public int getSchemaCount() {
+    return blocks.size();
+  }
+
+  /**
+   * Only read some fields of each record. Must be set before reading any records.
+   *
+   * @param projection fields to read
+   */
+  public ParallelMultiSchemaFileReader<D> setProjection(MultiSchemaProjection projection) {
+    this.projection = projection;
+    return this;
+  }
+
+  /**
+   * @return the metadata of the blocks that will be read
+   */
+  public List<BlockMetadata> getBlockMetadata() {
+    return blocks.stream().map(MultiSchemaFooter.BlockLocation::getMetadata)
+                 .collect(Collectors.toList());
+  }
+
+  /**
+   * Get an iterator over the records for each schema. Iterators can be used concurrently, but
+   * each iterator must only be used by one thread at a time. Iterators close their input when they
+   * are exhausted, otherwise they must be closed by the caller.
+   *
+   * @return an iterator for each schema in the file
+   */
+  public List<SchemaIterator<D>> getSchemaIterators() {
+    List<SchemaIterator<D>> iterators = new ArrayList<>(blocks.size());
+    for (MultiSchemaFooter.BlockLocation block : blocks) {
+      iterators.add(new SchemaIterator<>(source, block, projection));
+    }
+    return iterators;
+  }
+
+  /**
+   * @return an unordered, parallel stream of all the records in the file. Schemas are decoded
+   * concurrently in the stream's fork-join pool.
+   */
+  public Stream<D> stream() {
+    return blocks.parallelStream().unordered()
+                 .flatMap(block -> new SchemaIterator<D>(source, block, projection).stream());
+  }
+
+  /**
+   * Decode each schema on the executor, passing each record to the consumer. The consumer is
+   * called concurrently from the executor's threads.
+   *
+   * @param consumer thread-safe consumer of each record
+   * @param executor executor on which to decode the schemas
+   * @return a future that completes when all the records have been consumed, or exceptionally
+   * with the first failure
+   */
+  public CompletableFuture<Void> forEach(Consumer<? super D> consumer, Executor executor) {
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (SchemaIterator<D> iterator : getSchemaIterators()) {
+      futures.add(CompletableFuture.runAsync(() -> {
+        try {
+          iterator.forEachRemaining(consumer);
+        } finally {
+          iterator.close();
+        }
+      }, executor));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * Iterator over the records for a single schema. The input is opened lazily, on first access.
+   * Errors reading the input are thrown as {@link AvroRuntimeException}s, like
+   * {@link DataFileReader#next()}.
+   */
+  public static class SchemaIterator<D> implements Iterator<D>, Closeable {
+
+    private final SeekableInputSource source;
+    private final MultiSchemaFooter.BlockLocation block;
+    private final MultiSchemaProjection projection;
+    private DataFileReader<D> reader;
+    private boolean closed;
+
+    private SchemaIterator(SeekableInputSource source, MultiSchemaFooter.BlockLocation block,
+      MultiSchemaProjection projection) {
+      this.source = source;
+      this.block = block;
+      this.projection = projection;
+    }
+
+    /**
+     * @return the schema with which the records were written
+     */
+    public Schema getSchema() {
+      return open().getSchema();
+    }
+
+    private DataFileReader<D> open() {
+      if (reader == null) {
+        try {
+          SeekableInput input = block.slice(source.open());
+          GenericDatumReader<D> datum = new GenericDatumReader<>();
+          reader = new DataFileReader<>(input, datum);
+          datum.setExpected(projection.project(reader.getSchema()));
+        } catch (IOException e) {
+          throw new AvroRuntimeException(e);
+        }
+      }
+      return reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (closed) {
+        return false;
+      }
+      if (open().hasNext()) {
+        return true;
+      }
+      close();
+      return false;
+    }
+
+    @Override
+    public D next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return reader.next();
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      this.closed = true;
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          throw new AvroRuntimeException(e);
+        }
+      }
+    }
+
+    private Stream<D> stream() {
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+        Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    @Override
+    public String toString() {
+      return "SchemaIterator{" + block + '}';
+    }
+  }
+}
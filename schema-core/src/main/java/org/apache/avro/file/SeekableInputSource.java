@@ -0,0 +1,41 @@
+package org.apache.avro.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Opens independent {@link SeekableInput}s over the same data, so different parts of the data can
+ * be read concurrently. Each input has its own position and must only be used by one thread at a
+ * time.
+ */
+@FunctionalInterface
+public interface SeekableInputSource {
+
+  /**
+   * @return a new input over the data. The caller is responsible for closing the input.
+   * @throws IOException if the input cannot be opened
+   */
+  SeekableInput open() throws IOException;
+
+  static SeekableInputSource forBytes(byte[] data) {
+    return () -> new SeekableByteArrayInput(data);
+  }
+
+  static SeekableInputSource forBuffer(ByteBuffer buffer) {
+    return () -> SeekableByteBufferInput.create(buffer);
+  }
+
+  static SeekableInputSource forFile(File file) {
+    return () -> new SeekableFileInput(file);
+  }
+
+  /**
+   * Map the file once and open slices of the mapping, so all the inputs share the page cache
+   * rather than each buffering the file
+   */
+  static SeekableInputSource forMappedFile(File file) throws IOException {
+    SeekableMappedFileInput mapped = new SeekableMappedFileInput(file);
+    return () -> mapped.slice(0, mapped.length());
+  }
+}
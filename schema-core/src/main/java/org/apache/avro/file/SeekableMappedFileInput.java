@@ -0,0 +1,133 @@
+package org.apache.avro.file;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link SeekableInput} over a memory-mapped file. Reads come directly from the page cache, so
+ * many inputs over the same file do not each buffer their own copy of the data.
+ * <p>
+ * A single mapping is limited to 2GB, so larger files are mapped as multiple segments and reads
+ * span segments as needed. Use {@link #slice(long, long)} to get independent inputs over parts of
+ * the same mapping (e.g. for reading in parallel), rather than mapping the file again. Each input
+ * has its own position, so must only be used by one thread at a time.
+ * </p>
+ * <p>
+ * The file itself is only open while it is mapped. Java cannot unmap a file explicitly, so the
+ * mapping is released once the input and all its slices are closed or garbage collected; closing
+ * an input drops its references to the mapping, after which it cannot be read.
+ * </p>
+ */
+public class SeekableMappedFileInput implements SeekableInput {
+
+  static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+  /** <tt>null</tt> once the input is closed */
+  private ByteBuffer[] segments;
+  private final long segmentSize;
+  /** offset into the file that this input starts */
+  private final long offset;
+  private final long length;
+  private long position;
+
+  public SeekableMappedFileInput(File file) throws IOException {
+    this(file, MAX_SEGMENT_SIZE);
+  }
+
+  SeekableMappedFileInput(File file, long segmentSize) throws IOException {
+    Preconditions.checkArgument(segmentSize > 0 && segmentSize <= MAX_SEGMENT_SIZE,
+      "Segment size must be in (0, %s], but was %s", MAX_SEGMENT_SIZE, segmentSize);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      int count = (int) ((size + segmentSize - 1) / segmentSize);
+      MappedByteBuffer[] segments = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long start = i * segmentSize;
+        segments[i] =
+          channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+      }
+      this.segments = segments;
+      this.segmentSize = segmentSize;
+      this.offset = 0;
+      this.length = size;
+    }
+  }
+
+  private SeekableMappedFileInput(ByteBuffer[] segments, long segmentSize, long offset,
+    long length) {
+    // each input has its own view of the buffers so positions are not shared
+    this.segments = new ByteBuffer[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      this.segments[i] = segments[i].duplicate();
+    }
+    this.segmentSize = segmentSize;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Get an independent input over part of this input, without copying or remapping any data
+   *
+   * @param offset offset into this input at which the slice starts
+   * @param length number of bytes in the slice
+   * @return a new input, positioned at the start of the slice
+   */
+  public SeekableMappedFileInput slice(long offset, long length) {
+    Preconditions.checkState(segments != null, "Input is closed");
+    Preconditions.checkArgument(offset >= 0 && length >= 0 && offset + length <= this.length,
+      "Slice [%s, %s) outside of input with length %s", offset, offset + length, this.length);
+    return new SeekableMappedFileInput(segments, segmentSize, this.offset + offset, length);
+  }
+
+  @Override
+  public void seek(long p) throws IOException {
+    if (p < 0) {
+      throw new IOException("Cannot seek to negative position: " + p);
+    }
+    this.position = p;
+  }
+
+  @Override
+  public long tell() throws IOException {
+    return position;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return length;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (segments == null) {
+      throw new IOException("Input is closed");
+    }
+    if (position >= length) {
+      return -1;
+    }
+    int read = (int) Math.min(len, length - position);
+    int remaining = read;
+    while (remaining > 0) {
+      long filePosition = offset + position;
+      ByteBuffer segment = segments[(int) (filePosition / segmentSize)];
+      segment.position((int) (filePosition % segmentSize));
+      int n = Math.min(remaining, segment.remaining());
+      segment.get(b, off, n);
+      off += n;
+      remaining -= n;
+      position += n;
+    }
+    return read;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.segments = null;
+  }
+}
@@ -5,6 +5,11 @@ import java.io.IOException;
 /**
  * A seekable input that limits how much of the actual input stream is actually exposed (to
  * prevent rebuffering the same data) and supports reading from a fixed offset in the input stream
+ * <p>
+ * If the input is a {@link SeekableMappedFileInput}, this reads from a slice of the mapped file,
+ * rather than seeking the shared input, so many translated inputs can read the same file without
+ * interfering with each other.
+ * </p>
  */
 public class TranslatedSeekableInput implements SeekableInput {
   /**
@@ -14,14 +19,21 @@ public class TranslatedSeekableInput implements SeekableInput {
   private final SeekableInput delegate;
   /** offset into the delegate record that we start reading */
   private long offset;
+  /** slice of [offset, limit) when the delegate is mapped, otherwise <tt>null</tt> */
+  private SeekableMappedFileInput slice;
 
   public TranslatedSeekableInput(long offset, long limit, SeekableInput input) throws IOException {
     this.limit = limit;
     this.delegate = input;
     this.offset = offset;
-    // inherently the input cannot start earlier than this point, so we seek back to the
-    // beginning to make it easier to reason about, especially if someone is trying to read directly
-    input.seek(offset);
+    if (input instanceof SeekableMappedFileInput) {
+      this.slice = ((SeekableMappedFileInput) input).slice(offset, limit - offset);
+    } else {
+      // inherently the input cannot start earlier than this point, so we seek back to the
+      // beginning to make it easier to reason about, especially if someone is trying to read
+      // directly
+      input.seek(offset);
+    }
   }
 
   /**
@@ -35,6 +47,9 @@ public class TranslatedSeekableInput implements SeekableInput {
   public void nextBlock(long length) throws IOException {
     this.offset = this.limit;
     this.limit = Math.min(this.limit + length, delegate.length());
+    if (slice != null) {
+      this.slice = ((SeekableMappedFileInput) delegate).slice(offset, limit - offset);
+    }
   }
 
   /**
@@ -42,16 +57,26 @@ public class TranslatedSeekableInput implements SeekableInput {
    * @throws IOException if there is an error accessing the delegate
    */
   public long remainingTotal() throws IOException {
+    if (slice != null) {
+      return this.delegate.length() - (offset + slice.tell());
+    }
     return this.delegate.length() - this.delegate.tell();
   }
 
   @Override
   public void seek(long p) throws IOException {
+    if (slice != null) {
+      slice.seek(p);
+      return;
+    }
     delegate.seek(p + offset);
   }
 
   @Override
   public long tell() throws IOException {
+    if (slice != null) {
+      return slice.tell();
+    }
     return delegate.tell() - offset;
   }
 
@@ -62,6 +87,9 @@ public class TranslatedSeekableInput implements SeekableInput {
 
   @Override
   public int read(byte[] b, int off, int len) throws IOException {
+    if (slice != null) {
+      return slice.read(b, off, len);
+    }
     // just incase the input is seeked to before the current offset. Corrects the current
     // delegate tell location as well to start at the offset, it the input stream is seeked earlier.
     if (delegate.tell() < offset) {
@@ -6,6 +6,7 @@ import io.fineo.internal.customer.Metric;
 import io.fineo.internal.customer.MetricMetadata;
 import io.fineo.schema.avro.AvroSchemaInstanceBuilder;
 import io.fineo.schema.avro.SchemaNameUtils;
+import io.fineo.schema.avro.StoredFormat;
 import org.apache.avro.Schema;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.commons.logging.Log;
@@ -71,6 +72,12 @@ public class TestSchemaUtils {
     String encoded = SchemaNameUtils.toString(record);
     T out = SchemaNameUtils.readFromString(encoded, record.getSchema());
     assertEquals(record, out);
+    // every stored format can be read back, regardless of the format
+    for (StoredFormat format : StoredFormat.values()) {
+      encoded = format.write(record);
+      assertEquals(format, StoredFormat.getFormat(encoded));
+      assertEquals(record, StoredFormat.read(encoded, record.getSchema()));
+    }
   }
 
   @Test
@@ -12,14 +12,21 @@ import io.fineo.schema.store.AvroSchemaProperties;
 import io.fineo.schema.store.SchemaStore;
 import io.fineo.schema.store.SchemaTestUtils;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.specific.SpecificData;
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class TestRecordMetadata {
@@ -112,6 +119,85 @@ public class TestRecordMetadata {
     assertTrue(record.getSchema().getNamespace().endsWith(id));
   }
 
+  /**
+   * Metadata is parsed once per schema and the base fields of a generic record are read (and
+   * written) through to the record, rather than copied
+   */
+  @Test
+  public void testGenericBaseFieldsView() throws Exception {
+    String id = "123d43";
+    String metricName = "newschema";
+    String field = "bField";
+    long start = 1;
+
+    SchemaStore store = SchemaTestUtils.createStoreWithBooleanFields(id, metricName, field);
+    Map<String, Object> rawFields = SchemaTestUtils.getBaseFields(id, metricName, start);
+    rawFields.put(field, true);
+    GenericRecord record = SchemaTestUtils.writeReadRecord(store, id, new MapRecord(rawFields));
+    GenericRecord copy = GenericData.get().deepCopy(record.getSchema(), record);
+
+    RecordMetadata metadata = RecordMetadata.get(record);
+    RecordMetadata copyMetadata = RecordMetadata.get(copy);
+    assertSame(metadata.getOrgID(), copyMetadata.getOrgID());
+    assertSame(metadata.getMetricCanonicalType(), copyMetadata.getMetricCanonicalType());
+
+    BaseFields fields = metadata.getBaseFields();
+    BaseFields expected = BaseFields.newBuilder()
+                                    .setAliasName(metricName)
+                                    .setTimestamp(start)
+                                    .setWriteTime(fields.getWriteTime())
+                                    .setUnknownFields(new HashMap<>())
+                                    .build();
+    // views compare equal to each other, but only a copy compares equal to a plain BaseFields
+    BaseFields copyFields = copyMetadata.getBaseFields();
+    assertEquals(fields, copyFields);
+    assertEquals(copyFields, fields);
+    assertEquals(fields.hashCode(), copyFields.hashCode());
+    assertNotEquals(fields, expected);
+    assertNotEquals(expected, fields);
+    BaseFields copied = SpecificData.get().deepCopy(BaseFields.getClassSchema(), fields);
+    assertEquals(BaseFields.class, copied.getClass());
+    assertEquals(expected, copied);
+    assertEquals(expected.hashCode(), fields.hashCode());
+
+    fields.setTimestamp(start + 1);
+    GenericRecord base = (GenericRecord) record.get(AvroSchemaProperties.BASE_FIELDS_KEY);
+    assertEquals(start + 1, base.get(AvroSchemaProperties.TIMESTAMP_KEY));
+    // the copy is untouched
+    assertEquals(start, copyMetadata.getBaseFields().getTimestamp().longValue());
+  }
+
+  /**
+   * Metadata is cached for each schema, but that must not keep the schema from being collected
+   */
+  @Test
+  public void testSchemaMetadataDoesNotHoldSchema() throws Exception {
+    String id = "123d43";
+    String metricName = "newschema";
+    String field = "bField";
+    SchemaStore store = SchemaTestUtils.createStoreWithBooleanFields(id, metricName, field);
+    Map<String, Object> rawFields = SchemaTestUtils.getBaseFields(id, metricName);
+    rawFields.put(field, true);
+    GenericRecord record = SchemaTestUtils.writeReadRecord(store, id, new MapRecord(rawFields));
+
+    // a schema that only this test knows about
+    Schema schema = new Schema.Parser().parse(record.getSchema().toString());
+    GenericRecord copy = GenericData.get().deepCopy(schema, record);
+    RecordMetadata metadata = RecordMetadata.get(copy);
+    assertSame(schema, metadata.getMetricSchema());
+    assertNotNull(metadata.getBaseFields());
+
+    WeakReference<Schema> ref = new WeakReference<>(schema);
+    schema = null;
+    copy = null;
+    metadata = null;
+    for (int i = 0; i < 100 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull("Schema was not collected", ref.get());
+  }
+
   public static void verifyRecordMetadataMatchesExpectedNaming(GenericRecord record) {
     RecordMetadata metadata = RecordMetadata.get(record);
     String orgId = metadata.getOrgID();
@@ -0,0 +1,72 @@
+package io.fineo.schema.store;
+
+import io.fineo.internal.customer.Metric;
+import io.fineo.internal.customer.OrgMetadata;
+import org.junit.After;
+import org.junit.Test;
+import org.schemarepo.InMemoryRepository;
+import org.schemarepo.ValidatorFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAsyncSchemaStore {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void shutdown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testParallelLookups() throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY));
+    AsyncSchemaStore async = new AsyncSchemaStore(store, executor);
+    String org = "org";
+    SchemaBuilder.Organization organization =
+      SchemaBuilder.create().newOrg(org)
+                   .newMetric().withName("m1").build()
+                   .newMetric().withName("m2").build()
+                   .newMetric().withName("m3").build().build();
+    async.createNewOrganization(organization).get();
+
+    OrgMetadata metadata = async.getOrgMetadata(org).get();
+    List<CompletableFuture<Metric>> lookups = new ArrayList<>();
+    for (String cname : metadata.getMetrics().keySet()) {
+      lookups.add(async.getMetricMetadata(org, cname));
+    }
+    CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).get();
+    Map<String, Metric> batch = async.getMetricMetadata(org, metadata.getMetrics().keySet()).get();
+    assertEquals(3, batch.size());
+    for (CompletableFuture<Metric> lookup : lookups) {
+      Metric metric = lookup.get();
+      assertEquals(batch.get(metric.getMetadata().getMeta().getCanonicalName()), metric);
+    }
+  }
+
+  @Test
+  public void testFailuresCompleteExceptionally() throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY));
+    AsyncSchemaStore async = new AsyncSchemaStore(store, executor);
+    SchemaBuilder.Organization organization =
+      SchemaBuilder.create().newOrg("org").newMetric().withName("m1").build().build();
+    async.createNewOrganization(organization).get();
+
+    try {
+      async.createNewOrganization(organization).get();
+      fail("Should not be able to create the same org twice");
+    } catch (ExecutionException e) {
+      assertTrue("Wrong cause: " + e.getCause(), e.getCause() instanceof IllegalStateException);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package io.fineo.schema.store;
+
+import io.fineo.internal.customer.BaseFields;
+import io.fineo.schema.MapRecord;
+import io.fineo.schema.Record;
+import io.fineo.schema.exception.SchemaNotFoundException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestAvroSchemaBatchEncoder {
+
+  @Test
+  public void testEncodeInOrderAcrossOrgsAndMetrics() throws Exception {
+    SchemaStore store = SchemaTestUtils.getStore();
+    String org1 = "org1", org2 = "org2", m1 = "m1", m2 = "m2", field = "f1";
+    SchemaTestUtils.addNewOrg(store, org1, m1, field);
+    SchemaTestUtils.addNewOrg(store, org2, m2, field);
+
+    List<Record> records = new ArrayList<>();
+    records.add(record(org1, m1, 1, field));
+    records.add(record(org2, m2, 2, field));
+    records.add(record(org1, m1, 3, field));
+    records.add(record(org2, m2, 4, field));
+
+    AvroSchemaBatchEncoder encoder = new AvroSchemaBatchEncoder(store);
+    List<AvroSchemaBatchEncoder.EncodedRecord> encoded = encoder.encodeAll(records);
+    assertEquals(records.size(), encoded.size());
+    for (int i = 0; i < records.size(); i++) {
+      AvroSchemaBatchEncoder.EncodedRecord result = encoded.get(i);
+      assertTrue(result.succeeded());
+      assertSame(records.get(i), result.getSource());
+      BaseFields base = (BaseFields) result.getEncoded().get(AvroSchemaProperties.BASE_FIELDS_KEY);
+      assertEquals((Long) (long) (i + 1), base.getTimestamp());
+    }
+
+    // same metric shares the schema, different metric does not
+    assertSame(encoded.get(0).getEncoded().getSchema(), encoded.get(2).getEncoded().getSchema());
+    assertNotSame(encoded.get(0).getEncoded().getSchema(),
+      encoded.get(1).getEncoded().getSchema());
+  }
+
+  @Test
+  public void testFailuresReturnedInPlace() throws Exception {
+    SchemaStore store = SchemaTestUtils.getStore();
+    String org = "org", metric = "m1", field = "f1";
+    SchemaTestUtils.addNewOrg(store, org, metric, field);
+
+    List<Record> records = new ArrayList<>();
+    records.add(record(org, metric, 1, field));
+    records.add(record(org, "unknownMetric", 2, field));
+    records.add(record(org, metric, 3, field));
+
+    List<AvroSchemaBatchEncoder.EncodedRecord> encoded =
+      new AvroSchemaBatchEncoder(store).encodeAll(records);
+    assertTrue(encoded.get(0).succeeded());
+    assertTrue(encoded.get(2).succeeded());
+
+    AvroSchemaBatchEncoder.EncodedRecord failed = encoded.get(1);
+    assertNull(failed.getEncoded());
+    assertSame(records.get(1), failed.getSource());
+    assertTrue("Wrong failure: " + failed.getFailure(),
+      failed.getFailure() instanceof SchemaNotFoundException);
+  }
+
+  private Record record(String org, String metric, long ts, String field) {
+    Map<String, Object> fields = SchemaTestUtils.getBaseFields(org, metric, ts);
+    fields.put(field, true);
+    return new MapRecord(fields);
+  }
+}
@@ -1,15 +1,19 @@
 package io.fineo.schema.store;
 
+import com.google.common.collect.ImmutableMap;
 import io.fineo.internal.customer.BaseFields;
 import io.fineo.schema.MapRecord;
 import io.fineo.schema.Pair;
 import io.fineo.schema.Record;
+import io.fineo.schema.avro.RecordMetadata;
 import io.fineo.schema.exception.SchemaNotFoundException;
 import io.fineo.schema.timestamp.MultiPatternTimestampParser;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.junit.Test;
 import org.schemarepo.InMemoryRepository;
 import org.schemarepo.ValidatorFactory;
@@ -17,14 +21,18 @@ import org.schemarepo.ValidatorFactory;
 import java.io.ByteArrayOutputStream;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TimeZone;
 
 import static com.google.common.collect.ImmutableList.of;
 import static com.google.common.collect.Maps.newHashMap;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class TestAvroSchemaEncoding {
 
@@ -243,6 +251,160 @@ public class TestAvroSchemaEncoding {
     SchemaTestUtils.readWriteData(out);
   }
 
+  @Test
+  public void testEncoderPlanSharedPerMetricVersion() throws Exception {
+    SchemaStore store = getStore();
+    StoreManager storeManager = new StoreManager(store);
+    String org = "org", metric = "m1", f = "f1", f2 = "f2";
+    TestSchemaManager.commitSimpleType(storeManager, org, metric, of(), p(f, "INTEGER"));
+
+    Map<String, Object> map = new HashMap<>();
+    map.put(AvroSchemaProperties.ORG_ID_KEY, org);
+    map.put(AvroSchemaProperties.ORG_METRIC_TYPE_KEY, metric);
+    map.put(AvroSchemaProperties.TIMESTAMP_KEY, fixedTs);
+    map.put(f, 1);
+    map.put(f2, "2");
+    GenericRecord out = writeRecordAndValidateAtNow(store, org, map);
+    GenericRecord out2 = writeRecordAndValidateAtNow(store, org, map);
+    assertSame(out.getSchema(), out2.getSchema());
+    BaseFields base = (BaseFields) out.get(AvroSchemaProperties.BASE_FIELDS_KEY);
+    assertEquals(ImmutableMap.of(f2, "2"), base.getUnknownFields());
+
+    // new version of the metric gets a new plan, so we can encode the new field
+    storeManager.updateOrg(org).updateMetric(metric).newField().withName(f2).withType("VARCHAR")
+                .build().build().commit();
+    GenericRecord out3 = writeRecordAndValidateAtNow(store, org, map);
+    assertNotSame(out.getSchema(), out3.getSchema());
+    Record translated = new AvroRecordTranslator(out3, store).getTranslatedRecord();
+    assertEquals(map.get(f2), translated.getStringByField(f2));
+    base = (BaseFields) out3.get(AvroSchemaProperties.BASE_FIELDS_KEY);
+    assertEquals(newHashMap(), base.getUnknownFields());
+  }
+
+  /**
+   * Without a latest ttl on the cache, translators see changes to the metric made through other
+   * stores
+   */
+  @Test
+  public void testTranslatorSeesRemoteMetricUpdates() throws Exception {
+    InMemoryRepository repo = new InMemoryRepository(ValidatorFactory.EMPTY);
+    SchemaStore store = new SchemaStore(repo);
+    String org = "org", metric = "m1", f = "f1", alias = "a1";
+    TestSchemaManager.commitSimpleType(new StoreManager(store), org, metric, of(),
+      p(f, "INTEGER"));
+
+    Map<String, Object> map = new HashMap<>();
+    map.put(AvroSchemaProperties.ORG_ID_KEY, org);
+    map.put(AvroSchemaProperties.ORG_METRIC_TYPE_KEY, metric);
+    map.put(AvroSchemaProperties.TIMESTAMP_KEY, fixedTs);
+    map.put(f, 1);
+    GenericRecord out = writeRecordAndValidateAtNow(store, org, map);
+    Record translated = new AvroRecordTranslator(out, store).getTranslatedRecord();
+    assertEquals(map.get(f), translated.getIntegerByField(f));
+    assertNull(translated.getField(alias));
+    // the plan is still shared for the same version of the metric
+    RecordMetadata metadata = RecordMetadata.get(out);
+    assertSame(AvroTranslatorPlan.get(store, metadata), AvroTranslatorPlan.get(store, metadata));
+
+    SchemaStore remote = new SchemaStore(repo);
+    new StoreManager(remote).updateOrg(org).updateMetric(metric).addFieldAlias(f, alias).build()
+                            .commit();
+    translated = new AvroRecordTranslator(out, store).getTranslatedRecord();
+    assertEquals(map.get(f), translated.getIntegerByField(alias));
+  }
+
+  /**
+   * Fields can be written with any of their aliases, and the instance keeps the name the record
+   * used
+   */
+  @Test
+  public void testEncodeFieldAliases() throws Exception {
+    SchemaStore store = getStore();
+    StoreManager storeManager = new StoreManager(store);
+    String org = "org", metric = "m1", f = "f1", alias = "a1", f2 = "f2";
+    storeManager.newOrg(org)
+                .newMetric().setDisplayName(metric)
+                .newField().withName(f).withType(StoreManager.Type.LONG)
+                .withAliases(Arrays.asList(alias)).build()
+                .newField().withName(f2).withType(StoreManager.Type.BOOLEAN).build()
+                .build().commit();
+
+    Map<String, Object> map = new HashMap<>();
+    map.put(AvroSchemaProperties.ORG_ID_KEY, org);
+    map.put(AvroSchemaProperties.ORG_METRIC_TYPE_KEY, metric);
+    map.put(AvroSchemaProperties.TIMESTAMP_KEY, fixedTs);
+    map.put(alias, "10");
+    map.put(f2, true);
+    GenericRecord out = writeRecordAndValidateAtNow(store, org, map);
+    String cname = new StoreClerk(store, org).getMetricForUserNameOrAlias(metric)
+                                             .getCanonicalNameFromUserFieldName(f);
+    GenericRecord instance = (GenericRecord) out.get(cname);
+    assertEquals(alias, instance.get(AvroSchemaProperties.FIELD_INSTANCE_NAME));
+    assertEquals(10L, instance.get("value"));
+    Record translated = new AvroRecordTranslator(out, store).getTranslatedRecord();
+    assertEquals((Long) 10L, translated.getLongByFieldName(f));
+    assertEquals(true, translated.getBooleanByField(f2));
+    assertEquals(newHashMap(),
+      ((BaseFields) out.get(AvroSchemaProperties.BASE_FIELDS_KEY)).getUnknownFields());
+    SchemaTestUtils.readWriteData(out);
+  }
+
+  /**
+   * Encoding straight to bytes gives exactly the bytes of writing the encoded record
+   */
+  @Test
+  public void testEncodeToBinary() throws Exception {
+    SchemaStore store = getStore();
+    StoreManager storeManager = new StoreManager(store);
+    String org = "org", metric = "m1";
+    storeManager.newOrg(org)
+                .newMetric().setDisplayName(metric)
+                .newField().withName("s").withType(StoreManager.Type.STRING)
+                .withAliases(Arrays.asList("s_alias")).build()
+                .newField().withName("i").withType(StoreManager.Type.INTEGER).build()
+                .newField().withName("l").withType(StoreManager.Type.LONG).build()
+                .newField().withName("f").withType(StoreManager.Type.FLOAT).build()
+                .newField().withName("d").withType(StoreManager.Type.DOUBLE).build()
+                .newField().withName("b").withType(StoreManager.Type.BOOLEAN).build()
+                .newField().withName("bytes").withType(StoreManager.Type.BYTES).build()
+                .newField().withName("missing").withType(StoreManager.Type.LONG).build()
+                .build().commit();
+
+    Map<String, Object> map = new HashMap<>();
+    map.put(AvroSchemaProperties.ORG_ID_KEY, org);
+    map.put(AvroSchemaProperties.ORG_METRIC_TYPE_KEY, metric);
+    map.put(AvroSchemaProperties.TIMESTAMP_KEY, fixedTs);
+    map.put("s_alias", "value");
+    map.put("i", 1);
+    map.put("l", "not a number");
+    map.put("f", 2.5f);
+    map.put("d", "3.5");
+    map.put("b", true);
+    map.put("bytes", new byte[]{1, 2, 3});
+    map.put("unknown1", "u1");
+    map.put("unknown2", 2);
+    MapRecord record = new MapRecord(map);
+    Clock clock = Clock.fixed(Instant.now(), TimeZone.getDefault().toZoneId());
+    AvroSchemaEncoderFactory factory = new StoreClerk(store, org).getEncoderFactory();
+
+    AvroSchemaEncoder encoder = factory.getEncoder(record);
+    encoder.setClockForTesting(clock);
+    GenericRecord encoded = encoder.encode();
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    BinaryEncoder enc = EncoderFactory.get().binaryEncoder(expected, null);
+    new GenericDatumWriter<GenericRecord>(encoded.getSchema()).write(encoded, enc);
+    enc.flush();
+
+    encoder = factory.getEncoder(record);
+    encoder.setClockForTesting(clock);
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    enc = EncoderFactory.get().binaryEncoder(actual, enc);
+    assertEquals(fixedTs, encoder.encode(enc));
+    enc.flush();
+    assertSame(encoded.getSchema(), encoder.getSchema());
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+  }
+
   private GenericRecord writeRecordAndValidateAtNow(SchemaStore store, String org,
     Map<String, Object> map) throws SchemaNotFoundException {
     MapRecord mapRecord = new MapRecord(map);
@@ -1,7 +1,6 @@
 package io.fineo.schema.store;
 
 
-import io.fineo.internal.customer.Metadata;
 import io.fineo.internal.customer.Metric;
 import io.fineo.internal.customer.OrgMetadata;
 import io.fineo.schema.MapRecord;
@@ -19,8 +18,13 @@ import org.mockito.Mockito;
 import org.schemarepo.InMemoryRepository;
 import org.schemarepo.ValidatorFactory;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -28,6 +32,8 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 
 /**
@@ -126,17 +132,22 @@ public class TestAvroSchemaManager {
     verifyIllegalCreate(store, record,
       "when no metadata received from store, even when record had all necessary fields");
 
-    Metadata base = Mockito.mock(Metadata.class);
-    Mockito.when(base.getCanonicalName()).thenReturn("orgid");
-    OrgMetadata meta = Mockito.mock(OrgMetadata.class);
-    Mockito.when(store.getOrgMetadata("orgid")).thenReturn(meta);
-    Mockito.when(meta.getMetadata()).thenReturn(base);
-    verifyIllegalCreate(store, record, "when org id exists, but metric type not found");
-    Mockito.verify(meta, times(2)).getMetrics();
-    Mockito.verifyZeroInteractions(base);
-
-    // across all the attempts
-    Mockito.verify(store, times(5)).getOrgMetadata("orgid");
+    // across all the attempts, once per attempt with an org id
+    Mockito.verify(store, times(2)).getOrgMetadata("orgid");
+
+    SchemaStore stored =
+      Mockito.spy(new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY)));
+    SchemaTestUtils.addNewOrg(stored, "orgid", "othermetric");
+    verifyIllegalCreate(stored, record, "when org id exists, but metric type not found");
+
+    // the first lookup indexed the stored org, so the next lookup only reads the index, rather
+    // than scanning all the metrics
+    OrgMetadata meta = Mockito.spy(stored.getOrgMetadata("orgid"));
+    Mockito.doReturn(meta).when(stored).getOrgMetadata("orgid");
+    verifyIllegalCreate(stored, record, "when org id exists, but metric type not found (again)");
+    Mockito.verify(meta, atLeastOnce()).getMetadata();
+    Mockito.verify(meta, never()).getMetrics();
+    assertNotNull(new StoreClerk(stored, "orgid").getMetricForUserNameOrAlias("othermetric"));
   }
 
   @Test(expected = IllegalStateException.class)
@@ -206,6 +217,101 @@ public class TestAvroSchemaManager {
     encoder.encode();
   }
 
+  /**
+   * Translators from the same factory look up the metric once per record schema and read fields
+   * by any of their aliases
+   */
+  @Test
+  public void testTranslatorFactory() throws Exception {
+    String orgId = "orgid", metric = "metric", longField = "f1", alias = "a1",
+      boolField = "f2", missingField = "f3";
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY));
+    new StoreManager(store).newOrg(orgId)
+                           .newMetric().setDisplayName(metric)
+                           .newField().withName(longField).withType(StoreManager.Type.LONG)
+                           .withAliases(Arrays.asList(alias)).build()
+                           .newField().withName(boolField).withType(StoreManager.Type.BOOLEAN)
+                           .build()
+                           .newField().withName(missingField).withType(StoreManager.Type.STRING)
+                           .build()
+                           .build().commit();
+    AvroSchemaEncoderFactory encoders = new StoreClerk(store, orgId).getEncoderFactory();
+    List<GenericRecord> records = new ArrayList<>();
+    for (long i = 0; i < 3; i++) {
+      Map<String, Object> record = SchemaTestUtils.getBaseFields(orgId, metric);
+      record.put(i % 2 == 0 ? longField : alias, i);
+      record.put(boolField, true);
+      records.add(encoders.getEncoder(new MapRecord(record)).encode());
+    }
+
+    SchemaStore spy = Mockito.spy(store);
+    AvroRecordTranslatorFactory factory = new AvroRecordTranslatorFactory(spy);
+    for (int i = 0; i < records.size(); i++) {
+      Record translated = factory.getTranslator(records.get(i)).getTranslatedRecord();
+      assertEquals((long) i, translated.getField(longField));
+      assertEquals((long) i, translated.getField(alias));
+      assertEquals(true, translated.getField(boolField));
+      assertNull(translated.getField(missingField));
+      assertNull(translated.getField("unknown-field"));
+
+      // fields that are set, by display name, and the same again for the next iteration
+      Map<String, Object> expected = new HashMap<>();
+      expected.put(longField, (long) i);
+      expected.put(boolField, true);
+      for (int j = 0; j < 2; j++) {
+        Map<String, Object> fields = new HashMap<>();
+        for (Map.Entry<String, Object> field : translated.getFields()) {
+          fields.put(field.getKey(), field.getValue());
+          Map.Entry<String, Object> copy =
+            new AbstractMap.SimpleImmutableEntry<>(field.getKey(), field.getValue());
+          assertEquals(copy, field);
+          assertEquals(field, copy);
+          assertEquals(copy.hashCode(), field.hashCode());
+        }
+        assertEquals(expected, fields);
+      }
+    }
+    Mockito.verify(spy, times(1)).getMetricMetadata(Mockito.any(RecordMetadata.class));
+  }
+
+  /**
+   * With a latest ttl on the cache, translating single records doesn't read the metric for each
+   * record
+   */
+  @Test
+  public void testSingleTranslatorsReuseStorePlan() throws Exception {
+    String orgId = "org", metric = "metric", field = "f1";
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY),
+      new MetadataCache(MetadataCache.DEFAULT_MAX_ENTRIES, 1, TimeUnit.HOURS));
+    new StoreManager(store).newOrg(orgId)
+                           .newMetric().setDisplayName(metric)
+                           .newField().withName(field).withType(StoreManager.Type.LONG).build()
+                           .build().commit();
+    Map<String, Object> fields = SchemaTestUtils.getBaseFields(orgId, metric);
+    fields.put(field, 1L);
+    GenericRecord record = new StoreClerk(store, orgId).getEncoderFactory()
+                                                       .getEncoder(new MapRecord(fields))
+                                                       .encode();
+
+    // translating single records only reads the metric for the first record
+    SchemaStore spy = Mockito.spy(store);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(1L, new AvroRecordTranslator(record, spy).getTranslatedRecord()
+                                                            .getField(field));
+      assertEquals(1L, AvroSchemaManager.translator(spy, record).getTranslatedRecord()
+                                        .getField(field));
+    }
+    Mockito.verify(spy, times(1)).getMetricMetadata(Mockito.any(RecordMetadata.class));
+    Mockito.verify(spy, never()).getOrgMetadata(orgId);
+
+    // changing the metric through the store reads the metric again
+    new StoreManager(spy).updateOrg(orgId).updateMetric(metric).addFieldAlias(field, "alias")
+                         .build().commit();
+    assertEquals(1L, new AvroRecordTranslator(record, spy).getTranslatedRecord()
+                                                          .getField("alias"));
+    Mockito.verify(spy, times(2)).getMetricMetadata(Mockito.any(RecordMetadata.class));
+  }
+
   private void verifyIllegalCreate(SchemaStore store, Record record, String when)
     throws SchemaNotFoundException {
     try {
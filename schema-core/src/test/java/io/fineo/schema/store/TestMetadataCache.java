@@ -0,0 +1,78 @@
+package io.fineo.schema.store;
+
+import io.fineo.internal.customer.Metric;
+import io.fineo.internal.customer.OrgMetadata;
+import org.junit.Test;
+import org.schemarepo.InMemoryRepository;
+import org.schemarepo.ValidatorFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class TestMetadataCache {
+
+  private final String org = "org", metric = "metric";
+
+  @Test
+  public void testCachedInstancesAreCopies() throws Exception {
+    SchemaStore store = SchemaTestUtils.getStore();
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(org).newMetric().setDisplayName(metric).build().commit();
+
+    OrgMetadata orgMetadata = store.getOrgMetadata(org);
+    String metricId = orgMetadata.getMetrics().keySet().iterator().next();
+    Metric read = store.getMetricMetadata(org, metricId);
+    assertEquals(read, store.getMetricMetadata(org, metricId));
+
+    // changing the returned instances doesn't change what we read next
+    orgMetadata.getMetrics().clear();
+    read.getMetadata().getFields().clear();
+    OrgMetadata orgMetadata2 = store.getOrgMetadata(org);
+    assertNotSame(orgMetadata, orgMetadata2);
+    assertEquals(1, orgMetadata2.getMetrics().size());
+    assertNotEquals(read, store.getMetricMetadata(org, metricId));
+  }
+
+  @Test
+  public void testLocalUpdatesInvalidateLatest() throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY),
+      new MetadataCache(10, 1, TimeUnit.HOURS));
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(org).newMetric().setDisplayName(metric).build().commit();
+    String version = store.getOrgMetadata(org).getMetadata().getVersion();
+
+    manager.updateOrg(org).withMetricKeys("key").commit();
+    OrgMetadata updated = store.getOrgMetadata(org);
+    assertNotEquals(version, updated.getMetadata().getVersion());
+    assertEquals(1, updated.getMetricKeys().size());
+  }
+
+  @Test
+  public void testRemoteUpdatesAreStaleUntilExpired() throws Exception {
+    InMemoryRepository repo = new InMemoryRepository(ValidatorFactory.EMPTY);
+    MetadataCache cache = new MetadataCache(10, 1, TimeUnit.HOURS);
+    SchemaStore cached = new SchemaStore(repo, cache);
+    SchemaStore remote = new SchemaStore(repo);
+    StoreManager manager = new StoreManager(remote);
+    manager.newOrg(org).newMetric().setDisplayName(metric).build().commit();
+    String version = cached.getOrgMetadata(org).getMetadata().getVersion();
+
+    manager.updateOrg(org).withMetricKeys("key").commit();
+    assertEquals(version, cached.getOrgMetadata(org).getMetadata().getVersion());
+
+    cache.clear();
+    assertNotEquals(version, cached.getOrgMetadata(org).getMetadata().getVersion());
+  }
+
+  @Test
+  public void testDisabledCache() throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY),
+      MetadataCache.disabled());
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(org).newMetric().setDisplayName(metric).build().commit();
+    assertEquals(store.getOrgMetadata(org), store.getOrgMetadata(org));
+  }
+}
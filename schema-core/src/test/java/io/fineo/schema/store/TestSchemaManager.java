@@ -283,6 +283,24 @@ public class TestSchemaManager {
     assertEquals(newArrayList(a1, a2), metric.getAliases());
   }
 
+  @Test
+  public void testSnapshotClerkOnlySeesUpdatesAfterRefresh() throws Exception {
+    SchemaStore store = getStore();
+    StoreManager manager = new StoreManager(SchemaNameGenerator.DEFAULT_INSTANCE, store);
+    String orgId = "org1", metricName = "metricname", field = "f1";
+    manager.newOrg(orgId).newMetric().setDisplayName(metricName).newField().withName(field)
+           .withType(StoreManager.Type.BOOLEAN).build().build().commit();
+
+    StoreClerk clerk = StoreClerk.snapshot(store, orgId);
+    assertEquals(1, clerk.getMetricForUserNameOrAlias(metricName).getUserVisibleFields().size());
+
+    manager.updateOrg(orgId).updateMetric(metricName).deleteField(field).build().commit();
+    assertEquals(1, clerk.getMetricForUserNameOrAlias(metricName).getUserVisibleFields().size());
+
+    clerk.refresh();
+    assertEquals(0, clerk.getMetricForUserNameOrAlias(metricName).getUserVisibleFields().size());
+  }
+
   @Test
   public void testDeleteField() throws Exception {
     SchemaStore store = getStore();
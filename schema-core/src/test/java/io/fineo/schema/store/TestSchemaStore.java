@@ -1,16 +1,34 @@
 package io.fineo.schema.store;
 
+import io.fineo.internal.customer.BaseFields;
 import io.fineo.internal.customer.Metric;
 import io.fineo.internal.customer.OrgMetadata;
+import io.fineo.schema.MapRecord;
+import io.fineo.schema.aws.dynamodb.BatchReadRepository;
+import io.fineo.schema.aws.dynamodb.CachingBatchReadRepository;
+import io.fineo.schema.avro.StoredFormat;
+import org.apache.avro.generic.GenericRecord;
 import org.junit.Test;
+import org.schemarepo.InMemoryCache;
 import org.schemarepo.InMemoryRepository;
+import org.schemarepo.SchemaEntry;
+import org.schemarepo.Subject;
 import org.schemarepo.ValidatorFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class TestSchemaStore {
   private static final String ORG_ID = "orgId";
@@ -42,6 +60,163 @@ public class TestSchemaStore {
     verifySchemasMatch(from, to, ORG_ID);
   }
 
+  @Test
+  public void testAliasLookupsFollowOrgVersion() throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY));
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(ORG_ID).newMetric().setDisplayName(NEW_SCHEMA_DISPLAY_NAME).build().commit();
+    OrgMetadata org = store.getOrgMetadata(ORG_ID);
+    String metricId = org.getMetrics().keySet().iterator().next();
+    assertEquals(metricId, store.getMetricCNameFromAlias(org, NEW_SCHEMA_DISPLAY_NAME));
+    assertNull(store.getMetricCNameFromAlias(org, "alias"));
+    String version = org.getMetadata().getVersion();
+    assertSame(AliasIndex.forOrg(store, version, org),
+      AliasIndex.forOrg(store, version, store.getOrgMetadata(ORG_ID)));
+
+    manager.updateOrg(ORG_ID).updateMetric(NEW_SCHEMA_DISPLAY_NAME).addAliases("alias").build()
+           .commit();
+    OrgMetadata updated = store.getOrgMetadata(ORG_ID);
+    assertEquals(metricId, store.getMetricCNameFromAlias(updated, "alias"));
+    assertEquals(updated.getMetrics().get(metricId),
+      store.getOrgMetricMetadataForAliasMetricName(updated, "alias"));
+    assertNull(store.getOrgMetricMetadataForAliasMetricName(updated, "other"));
+  }
+
+  @Test
+  public void testAliasLookupsInLocallyModifiedOrg() throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY));
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(ORG_ID).newMetric().setDisplayName(NEW_SCHEMA_DISPLAY_NAME).build().commit();
+    OrgMetadata org = store.getOrgMetadata(ORG_ID);
+    String metricId = org.getMetrics().keySet().iterator().next();
+    assertEquals(metricId, new StoreClerk(store, ORG_ID)
+      .getMetricForUserNameOrAlias(NEW_SCHEMA_DISPLAY_NAME).getMetricId());
+    assertEquals(metricId, store.getMetricCNameFromAlias(org, NEW_SCHEMA_DISPLAY_NAME));
+
+    // add a metric without storing it, so the org keeps the same version
+    OrgMetadata modified = SchemaBuilder.create().updateOrg(org).newMetric()
+                                        .withDisplayName("local").build().build().getMetadata();
+    assertEquals(org.getMetadata().getVersion(), modified.getMetadata().getVersion());
+    String localId = store.getMetricCNameFromAlias(modified, "local");
+    assertNotNull(localId);
+    assertNotEquals(metricId, localId);
+    assertEquals(metricId, store.getMetricCNameFromAlias(modified, NEW_SCHEMA_DISPLAY_NAME));
+    assertEquals(modified.getMetrics().get(localId),
+      store.getOrgMetricMetadataForAliasMetricName(modified, "local"));
+  }
+
+  @Test
+  public void testStoresShareCache() throws Exception {
+    MetadataCache cache = new MetadataCache();
+    List<SchemaStore> stores = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY), cache);
+      // same org (and version) in each repository, but a different field in the metric
+      new StoreManager(store).newOrg(ORG_ID).newMetric().setDisplayName(NEW_SCHEMA_DISPLAY_NAME)
+                             .newField().withName("f" + i).withType(StoreManager.Type.LONG)
+                             .build().build().commit();
+      stores.add(store);
+    }
+    assertEquals(stores.get(0).getOrgMetadata(ORG_ID).getMetadata().getVersion(),
+      stores.get(1).getOrgMetadata(ORG_ID).getMetadata().getVersion());
+
+    for (int i = 0; i < stores.size(); i++) {
+      Map<String, Object> map = new HashMap<>();
+      map.put(AvroSchemaProperties.ORG_ID_KEY, ORG_ID);
+      map.put(AvroSchemaProperties.ORG_METRIC_TYPE_KEY, NEW_SCHEMA_DISPLAY_NAME);
+      map.put(AvroSchemaProperties.TIMESTAMP_KEY, 10);
+      map.put("f" + i, 1L);
+      GenericRecord record = new StoreClerk(stores.get(i), ORG_ID).getEncoderFactory()
+                                                                 .getEncoder(new MapRecord(map))
+                                                                 .encode();
+      // the field is only known if the encoder was planned from this store's metric
+      BaseFields base = (BaseFields) record.get(AvroSchemaProperties.BASE_FIELDS_KEY);
+      assertEquals(new HashMap<>(), base.getUnknownFields());
+    }
+  }
+
+  @Test
+  public void testReadAcrossStoredFormats() throws Exception {
+    InMemoryRepository repo = new InMemoryRepository(ValidatorFactory.EMPTY);
+    SchemaStore json = new SchemaStore(repo);
+    SchemaStore deflate = new SchemaStore(repo, new MetadataCache(), StoredFormat.DEFLATE);
+    StoreManager manager = new StoreManager(json);
+    manager.newOrg(ORG_ID).newMetric().setDisplayName(NEW_SCHEMA_DISPLAY_NAME)
+           .newField().withName(BOOLEAN_FIELD_NAME).withType(StoreManager.Type.BOOLEAN).build()
+           .build().commit();
+    verifySchemasMatch(json, deflate, ORG_ID);
+
+    // update in the new format, which is still readable by the old store
+    new StoreManager(deflate).updateOrg(ORG_ID).updateMetric(NEW_SCHEMA_DISPLAY_NAME)
+                             .addAliases("alias").build().commit();
+    assertEquals(StoredFormat.DEFLATE, StoredFormat.getFormat(repo.lookup(ORG_ID).latest()
+                                                                  .getSchema()));
+    verifySchemasMatch(json, deflate, ORG_ID);
+    assertNotNull(new StoreClerk(json, ORG_ID).getMetricForUserNameOrAlias("alias"));
+  }
+
+  @Test
+  public void testBatchMetricLookup() throws Exception {
+    for (MetadataCache cache : new MetadataCache[]{new MetadataCache(),
+      new MetadataCache(10, 1, TimeUnit.HOURS)}) {
+      SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY), cache);
+      StoreManager manager = new StoreManager(store);
+      manager.newOrg(ORG_ID).newMetric().setDisplayName("m1").build()
+             .newMetric().setDisplayName("m2").build()
+             .newMetric().setDisplayName("m3").build().commit();
+      Set<String> cnames = store.getOrgMetadata(ORG_ID).getMetrics().keySet();
+      String first = cnames.iterator().next();
+      // one metric is already cached
+      store.getMetricMetadata(ORG_ID, first);
+
+      List<String> lookup = new ArrayList<>(cnames);
+      lookup.add("missing");
+      Map<String, Metric> metrics = store.getMetricMetadata(ORG_ID, lookup);
+      assertEquals(cnames, metrics.keySet());
+      for (String cname : cnames) {
+        assertEquals(store.getMetricMetadata(ORG_ID, cname), metrics.get(cname));
+      }
+    }
+  }
+
+  @Test
+  public void testBatchMetricLookupThroughCachedRepository() throws Exception {
+    BatchInMemoryRepository repo = new BatchInMemoryRepository();
+    SchemaStore store =
+      new SchemaStore(new CachingBatchReadRepository(repo, new InMemoryCache()));
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(ORG_ID).newMetric().setDisplayName("m1").build()
+           .newMetric().setDisplayName("m2").build().commit();
+    Set<String> cnames = store.getOrgMetadata(ORG_ID).getMetrics().keySet();
+
+    Map<String, Metric> metrics = store.getMetricMetadata(ORG_ID, cnames);
+    assertEquals(cnames, metrics.keySet());
+    assertEquals(1, repo.batches.size());
+    assertEquals(cnames.size(), repo.batches.get(0).size());
+  }
+
+  private static class BatchInMemoryRepository extends InMemoryRepository
+    implements BatchReadRepository {
+    private final List<Collection<String>> batches = new ArrayList<>();
+
+    private BatchInMemoryRepository() {
+      super(ValidatorFactory.EMPTY);
+    }
+
+    @Override
+    public Map<String, SchemaEntry> getLatestSchemas(Collection<String> subjectNames) {
+      batches.add(subjectNames);
+      Map<String, SchemaEntry> latest = new HashMap<>();
+      for (String name : subjectNames) {
+        Subject subject = lookup(name);
+        if (subject != null) {
+          latest.put(name, subject.latest());
+        }
+      }
+      return latest;
+    }
+  }
+
   public static void verifySchemasMatch(SchemaStore store, SchemaStore store2, String org) {
     StoreClerk fromClerk = new StoreClerk(store, org);
     StoreClerk toClerk = new StoreClerk(store2, org);
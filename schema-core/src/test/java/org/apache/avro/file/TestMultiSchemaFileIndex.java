@@ -0,0 +1,157 @@
+package org.apache.avro.file;
+
+import io.fineo.avro.writer.BlockMetadata;
+import io.fineo.avro.writer.MultiContents;
+import io.fineo.internal.customer.BaseFields;
+import io.fineo.schema.store.AvroSchemaProperties;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the index of schemas in the multi-schema file footer
+ */
+public class TestMultiSchemaFileIndex {
+
+  @Test
+  public void testIndexDescribesBlocks() throws Exception {
+    List<GenericRecord> first = records(3, 100);
+    List<GenericRecord> second = records(5, 1000);
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(write(first, second)));
+
+    List<BlockMetadata> blocks = reader.getBlockMetadata();
+    assertEquals(2, blocks.size());
+    for (BlockMetadata block : blocks) {
+      List<GenericRecord> records =
+        block.getFullName().equals(first.get(0).getSchema().getFullName()) ? first : second;
+      assertEquals(SchemaNormalization.parsingFingerprint64(records.get(0).getSchema()),
+        (long) block.getFingerprint());
+      assertEquals(records.size(), (long) block.getRecordCount());
+      assertEquals(timestamp(records.get(0)), (long) block.getMinTimestamp());
+      assertEquals(timestamp(records.get(records.size() - 1)), (long) block.getMaxTimestamp());
+    }
+  }
+
+  @Test
+  public void testFilterBlocks() throws Exception {
+    List<GenericRecord> first = records(3, 100);
+    List<GenericRecord> second = records(5, 1000);
+    byte[] data = write(first, second);
+
+    verify(data, MultiSchemaBlockFilters.forSchema(first.get(0).getSchema()), first);
+    verify(data, MultiSchemaBlockFilters.forFullName(second.get(0).getSchema().getFullName()),
+      second);
+    verify(data, MultiSchemaBlockFilters.forFullName("no.such.schema"), Collections.emptyList());
+    verify(data, MultiSchemaBlockFilters.forTimeRange(0, 100), first);
+    verify(data, MultiSchemaBlockFilters.forTimeRange(102, 1000), first, second);
+    verify(data, MultiSchemaBlockFilters.forTimeRange(103, 999), Collections.emptyList());
+    verify(data, MultiSchemaBlockFilters.forTimeRange(1004, Long.MAX_VALUE), second);
+
+    // parallel reader applies the same filter
+    ParallelMultiSchemaFileReader<GenericRecord> reader = new ParallelMultiSchemaFileReader<>(
+      SeekableInputSource.forBytes(data), MultiSchemaBlockFilters.forTimeRange(0, 100));
+    assertEquals(1, reader.getSchemaCount());
+    assertEquals(first, reader.stream().collect(Collectors.toList()));
+  }
+
+  /**
+   * Files written before the footer had an index can still be read, but the blocks cannot be
+   * filtered
+   */
+  @Test
+  public void testReadVersionOneFile() throws Exception {
+    List<GenericRecord> first = records(3, 100);
+    List<GenericRecord> second = records(2, 1000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[]{'1', 'c', 'k', MultiSchemaData.VERSION_1});
+    List<Long> lengths = new ArrayList<>();
+    for (List<GenericRecord> records : new List[]{first, second}) {
+      ByteArrayOutputStream block = new ByteArrayOutputStream();
+      DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>());
+      writer.create(records.get(0).getSchema(), block);
+      for (GenericRecord record : records) {
+        writer.append(record);
+      }
+      writer.close();
+      lengths.add((long) block.size());
+      out.write(block.toByteArray());
+    }
+    int metaOffset = out.size();
+    Encoder enc = EncoderFactory.get().binaryEncoder(out, null);
+    new SpecificDatumWriter<>(MultiContents.class).write(new MultiContents(lengths), enc);
+    enc.flush();
+    out.write(ByteBuffer.allocate(MultiSchemaData.OFFSET_COUNT_LENGTH).putInt(metaOffset).array());
+    byte[] data = out.toByteArray();
+
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(data));
+    for (BlockMetadata block : reader.getBlockMetadata()) {
+      assertNull(block.getFullName());
+      assertNull(block.getRecordCount());
+    }
+    verify(data, MultiSchemaBlockFilters.forTimeRange(0, 10), first, second);
+  }
+
+  @SafeVarargs
+  private final void verify(byte[] data, Predicate<BlockMetadata> filter,
+    List<GenericRecord>... expected) throws IOException {
+    List<GenericRecord> remaining = new ArrayList<>();
+    for (List<GenericRecord> records : expected) {
+      remaining.addAll(records);
+    }
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(data), filter);
+    GenericRecord next;
+    while ((next = reader.next()) != null) {
+      assertTrue("Unexpected record: " + next, remaining.remove(next));
+    }
+    assertEquals(new ArrayList<>(), remaining);
+  }
+
+  @SafeVarargs
+  private final byte[] write(List<GenericRecord>... records) throws IOException {
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.create();
+    for (List<GenericRecord> schemaRecords : records) {
+      for (GenericRecord record : schemaRecords) {
+        writer.append(record);
+      }
+    }
+    return writer.close();
+  }
+
+  /**
+   * @return records with a new schema, with timestamps increasing from the start
+   */
+  private List<GenericRecord> records(int count, long start) throws IOException {
+    List<GenericRecord> records = TestMultiSchemaReadWrite.createRandomRecord(count);
+    for (int i = 0; i < count; i++) {
+      BaseFields base = (BaseFields) records.get(i).get(AvroSchemaProperties.BASE_FIELDS_KEY);
+      base.setTimestamp(start + i);
+    }
+    return records;
+  }
+
+  private long timestamp(GenericRecord record) {
+    return ((BaseFields) record.get(AvroSchemaProperties.BASE_FIELDS_KEY)).getTimestamp();
+  }
+}
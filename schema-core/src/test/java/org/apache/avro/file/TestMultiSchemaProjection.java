@@ -0,0 +1,194 @@
+package org.apache.avro.file;
+
+import com.google.common.collect.ImmutableMap;
+import io.fineo.schema.MapRecord;
+import io.fineo.schema.store.AvroSchemaProperties;
+import io.fineo.schema.store.SchemaStore;
+import io.fineo.schema.store.StoreClerk;
+import io.fineo.schema.store.StoreManager;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.codehaus.jackson.node.IntNode;
+import org.junit.Test;
+import org.schemarepo.InMemoryRepository;
+import org.schemarepo.ValidatorFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestMultiSchemaProjection {
+
+  private static final String ORG = "org";
+
+  @Test
+  public void testProjectFields() throws Exception {
+    SchemaStore store = createStore();
+    StoreClerk clerk = new StoreClerk(store, ORG);
+    List<GenericRecord> records = encode(clerk);
+    StoreClerk.Metric m1 = clerk.getMetricForUserNameOrAlias("m1");
+    String f1 = m1.getCanonicalNameFromUserFieldName("f1");
+
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(write(records)));
+    reader.setProjection(MultiSchemaProjection.fields(asList(f1)));
+    List<GenericRecord> read = readAll(reader);
+    assertEquals(records.size(), read.size());
+    for (GenericRecord record : read) {
+      GenericRecord written = find(records, record);
+      assertEquals(written.get(AvroSchemaProperties.BASE_FIELDS_KEY).toString(),
+        record.get(AvroSchemaProperties.BASE_FIELDS_KEY).toString());
+      if (record.getSchema().getField(f1) != null) {
+        // m1 has the field, so its the only field other than the base fields
+        assertEquals(2, record.getSchema().getFields().size());
+        assertEquals(written.get(f1).toString(), record.get(f1).toString());
+      } else {
+        assertEquals(1, record.getSchema().getFields().size());
+      }
+    }
+  }
+
+  @Test
+  public void testProjectMetricFieldsByAlias() throws Exception {
+    SchemaStore store = createStore();
+    StoreClerk clerk = new StoreClerk(store, ORG);
+    List<GenericRecord> records = encode(clerk);
+
+    // f2 is an alias in m1, but a field in m2
+    MultiSchemaProjection projection =
+      MultiSchemaProjection.forMetrics(clerk.getMetrics(), asList("f2"));
+    ParallelMultiSchemaFileReader<GenericRecord> reader =
+      new ParallelMultiSchemaFileReader<>(SeekableInputSource.forBytes(write(records)));
+    reader.setProjection(projection);
+    List<GenericRecord> read = reader.stream().collect(Collectors.toList());
+    assertEquals(records.size(), read.size());
+
+    for (StoreClerk.Metric metric : clerk.getMetrics()) {
+      String cname = metric.getCanonicalNameFromUserFieldName("f2");
+      List<GenericRecord> metricRecords =
+        read.stream().filter(r -> r.getSchema().getField(cname) != null)
+            .collect(Collectors.toList());
+      assertEquals(2, metricRecords.size());
+      for (GenericRecord record : metricRecords) {
+        assertEquals(2, record.getSchema().getFields().size());
+        assertNotNull(record.get(cname));
+      }
+    }
+  }
+
+  @Test
+  public void testUnprojectedSchemasAreUnchanged() throws Exception {
+    SchemaStore store = createStore();
+    StoreClerk clerk = new StoreClerk(store, ORG);
+    GenericRecord record = encode(clerk).get(0);
+    assertSame(record.getSchema(), MultiSchemaProjection.all().project(record.getSchema()));
+    assertSame(record.getSchema(), MultiSchemaProjection.perSchema(ImmutableMap.of("other.schema",
+      asList("f1"))).project(record.getSchema()));
+    List<String> allFields = record.getSchema().getFields().stream().map(f -> f.name())
+                                   .collect(Collectors.toList());
+    assertSame(record.getSchema(),
+      MultiSchemaProjection.fields(allFields).project(record.getSchema()));
+    assertNull(MultiSchemaProjection.fields(asList("f1")).project(record.getSchema())
+                                    .getField("not_a_field"));
+  }
+
+  /**
+   * Projected schemas keep the props of the schema and its fields, including those that are not
+   * strings
+   */
+  @Test
+  public void testProjectionKeepsProps() throws Exception {
+    Schema writer = new Schema.Parser().parse(
+      "{\"type\": \"record\", \"name\": \"r\", \"namespace\": \"ns\", \"tag\": \"t\", " +
+      "\"fields\": [{\"name\": \"a\", \"type\": \"string\", \"tag\": \"f\"}, " +
+      "{\"name\": \"b\", \"type\": \"int\"}]}");
+    // the parser only keeps string props, but others can be added directly
+    writer.addProp("rank", IntNode.valueOf(3));
+    writer.getField("a").addProp("weight", IntNode.valueOf(2));
+    Schema reader = MultiSchemaProjection.fields(asList("a")).project(writer);
+    assertEquals(1, reader.getFields().size());
+    assertEquals(writer.getJsonProps(), reader.getJsonProps());
+    assertEquals(writer.getField("a").getJsonProps(), reader.getField("a").getJsonProps());
+  }
+
+  private SchemaStore createStore() throws Exception {
+    SchemaStore store = new SchemaStore(new InMemoryRepository(ValidatorFactory.EMPTY));
+    StoreManager manager = new StoreManager(store);
+    manager.newOrg(ORG)
+           .newMetric().setDisplayName("m1")
+           .newField().withName("f1").withType(StoreManager.Type.STRING).build()
+           .newField().withName("f3").withType(StoreManager.Type.LONG).withAliases(asList("f2"))
+           .build()
+           .build()
+           .newMetric().setDisplayName("m2")
+           .newField().withName("f2").withType(StoreManager.Type.STRING).build()
+           .newField().withName("f4").withType(StoreManager.Type.BOOLEAN).build()
+           .build()
+           .commit();
+    return store;
+  }
+
+  private List<GenericRecord> encode(StoreClerk clerk) throws Exception {
+    List<GenericRecord> records = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      records.add(encode(clerk, ImmutableMap.of("f1", "v" + i, "f2", (long) i), "m1", i));
+      records.add(encode(clerk, ImmutableMap.of("f2", "v" + i, "f4", true), "m2", i));
+    }
+    return records;
+  }
+
+  private GenericRecord encode(StoreClerk clerk, Map<String, Object> fields, String metric,
+    long timestamp) throws Exception {
+    Map<String, Object> map = new HashMap<>(fields);
+    map.put(AvroSchemaProperties.ORG_ID_KEY, ORG);
+    map.put(AvroSchemaProperties.ORG_METRIC_TYPE_KEY, metric);
+    map.put(AvroSchemaProperties.TIMESTAMP_KEY, timestamp);
+    return clerk.getEncoderFactory().getEncoder(new MapRecord(map)).encode();
+  }
+
+  private byte[] write(List<GenericRecord> records) throws IOException {
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    return writer.close();
+  }
+
+  private List<GenericRecord> readAll(MultiSchemaFileReader<GenericRecord> reader)
+    throws IOException {
+    List<GenericRecord> read = new ArrayList<>();
+    GenericRecord next;
+    while ((next = reader.next()) != null) {
+      read.add(next);
+    }
+    return read;
+  }
+
+  /**
+   * Find the written record with the same base fields as the projected record. Written base
+   * fields are specific records, while the read base fields are generic, so compare the string
+   * forms.
+   */
+  private GenericRecord find(List<GenericRecord> records, GenericRecord projected) {
+    String base = projected.get(AvroSchemaProperties.BASE_FIELDS_KEY).toString();
+    for (GenericRecord record : records) {
+      if (record.getSchema().getFullName().equals(projected.getSchema().getFullName()) &&
+          record.get(AvroSchemaProperties.BASE_FIELDS_KEY).toString().equals(base)) {
+        return record;
+      }
+    }
+    throw new AssertionError("No record matching " + projected);
+  }
+}
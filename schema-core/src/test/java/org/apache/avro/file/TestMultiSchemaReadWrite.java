@@ -1,20 +1,38 @@
 package org.apache.avro.file;
 
 import com.google.common.collect.Lists;
+import io.fineo.avro.writer.BlockMetadata;
+import io.fineo.avro.writer.MultiSchemaIndex;
 import io.fineo.internal.customer.BaseFields;
 import io.fineo.schema.MapRecord;
 import io.fineo.schema.avro.AvroSchemaInstanceBuilder;
 import io.fineo.schema.store.AvroSchemaProperties;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -22,10 +40,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static io.fineo.schema.store.AvroSchemaEncoder.asTypedRecord;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Test that we can read/write an output stream with multiple schemas
@@ -34,6 +59,9 @@ public class TestMultiSchemaReadWrite {
 
   private static final Log LOG = LogFactory.getLog(TestMultiSchemaReadWrite.class);
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void testSingleSchema() throws Exception {
     writeAndVerifyRecordsAndCodec(createRandomRecord());
@@ -95,12 +123,410 @@ public class TestMultiSchemaReadWrite {
     // we don't know how much metadata we will need to write for the records, but assume < 10% of
     // the total length of the byte array
     int sum = 4 /** magic */ + record2Len + 4 /** end identifier */;
+    // the footer indexes each block by the schema name
+    sum += record1.getSchema().getFullName().length() + record2.getSchema().getFullName().length();
     byte[] written = writer.close();
     int upper = (int) (sum * 0.1) + sum;
     assertTrue("Wrote bytes (" + written.length + ") outside expected range: " + sum + ", " + upper,
       sum < written.length && written.length <= upper);
   }
 
+  /**
+   * Empty blocks are skipped without recursing, so a file with many empty blocks does not
+   * overflow the stack
+   */
+  @Test
+  public void testManyEmptyBlocks() throws Exception {
+    Schema empty = SchemaBuilder.record("empty").fields().requiredInt("a").endRecord();
+    GenericRecord record = createRandomRecord();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(MultiSchemaData.MAGIC);
+    List<BlockMetadata> blocks = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      blocks.add(writeBlock(out, empty));
+    }
+    blocks.add(writeBlock(out, record.getSchema(), record));
+    int metaOffset = out.size();
+    Encoder enc = EncoderFactory.get().binaryEncoder(out, null);
+    new SpecificDatumWriter<>(MultiSchemaIndex.class).write(new MultiSchemaIndex(blocks), enc);
+    enc.flush();
+    out.write(ByteBuffer.allocate(MultiSchemaData.OFFSET_COUNT_LENGTH).putInt(metaOffset).array());
+
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(out.toByteArray()));
+    assertEquals(record, reader.next());
+    assertFalse(reader.hasNext());
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void testStreamRecords() throws Exception {
+    List<GenericRecord> records = createRandomRecord(5);
+    records.addAll(createRandomRecord(5));
+    MultiSchemaFileWriter writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writer.create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(writer.close()));
+    // read the first record directly, then the rest from the stream
+    List<GenericRecord> read = Lists.newArrayList(reader.next());
+    read.addAll(reader.stream().collect(Collectors.toList()));
+    assertEquals(records.size(), read.size());
+    assertTrue(read.containsAll(records));
+    assertFalse(reader.iterator().hasNext());
+  }
+
+  /**
+   * The input is closed when all the records are read, or when the reader or its stream is closed
+   * before that
+   */
+  @Test
+  public void testCloseInput() throws Exception {
+    List<GenericRecord> records = createRandomRecord(2);
+    records.addAll(createRandomRecord(2));
+    MultiSchemaFileWriter writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writer.create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    byte[] data = writer.close();
+
+    // iterator read to the end
+    CloseCountingInput input = new CloseCountingInput(data);
+    MultiSchemaFileReader<GenericRecord> reader = new MultiSchemaFileReader<>(input);
+    assertEquals(records.size(), Lists.newArrayList(reader.iterator()).size());
+    assertEquals(1, input.closed);
+
+    // stream closed part way through
+    input = new CloseCountingInput(data);
+    reader = new MultiSchemaFileReader<>(input);
+    try (Stream<GenericRecord> stream = reader.stream()) {
+      assertEquals(1, stream.limit(1).count());
+    }
+    assertEquals(1, input.closed);
+    assertFalse(reader.hasNext());
+
+    // reader closed part way through
+    input = new CloseCountingInput(data);
+    reader = new MultiSchemaFileReader<>(input);
+    reader.next();
+    reader.close();
+    assertEquals(1, input.closed);
+    assertNull(reader.next());
+    assertFalse(reader.iterator().hasNext());
+  }
+
+  private static class CloseCountingInput extends SeekableByteArrayInput {
+    private int closed;
+
+    private CloseCountingInput(byte[] data) {
+      super(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed++;
+      super.close();
+    }
+  }
+
+  /**
+   * Reusing records reads every record of a schema into the same instance, even when the schema
+   * is split across multiple blocks
+   */
+  @Test
+  public void testReuseRecordsPerSchema() throws Exception {
+    List<GenericRecord> first = createRandomRecord(4);
+    List<GenericRecord> second = createRandomRecord(4);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(MultiSchemaData.MAGIC);
+    List<BlockMetadata> blocks = new ArrayList<>();
+    List<GenericRecord> expected = new ArrayList<>();
+    for (int i = 0; i < 4; i += 2) {
+      for (List<GenericRecord> records : asList(first, second)) {
+        List<GenericRecord> written = records.subList(i, i + 2);
+        blocks.add(writeBlock(out, records.get(0).getSchema(),
+          written.toArray(new GenericRecord[0])));
+        expected.addAll(written);
+      }
+    }
+    int metaOffset = out.size();
+    Encoder enc = EncoderFactory.get().binaryEncoder(out, null);
+    new SpecificDatumWriter<>(MultiSchemaIndex.class).write(new MultiSchemaIndex(blocks), enc);
+    enc.flush();
+    out.write(ByteBuffer.allocate(MultiSchemaData.OFFSET_COUNT_LENGTH).putInt(metaOffset).array());
+
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(out.toByteArray()));
+    reader.setReuseRecords(true);
+    Map<String, GenericRecord> instances = new HashMap<>();
+    List<GenericRecord> read = new ArrayList<>();
+    GenericRecord next;
+    while ((next = reader.next()) != null) {
+      GenericRecord previous = instances.putIfAbsent(next.getSchema().getFullName(), next);
+      if (previous != null) {
+        assertSame(previous, next);
+      }
+      read.add(GenericData.get().deepCopy(next.getSchema(), next));
+    }
+    assertEquals(2, instances.size());
+    assertEquals(expected, read);
+
+    // a record of the wrong schema is not reused, and does not change the records that are read
+    reader = new MultiSchemaFileReader<>(new SeekableByteArrayInput(out.toByteArray()));
+    GenericRecord reuse = null;
+    read.clear();
+    while ((reuse = reader.next(reuse)) != null) {
+      read.add(GenericData.get().deepCopy(reuse.getSchema(), reuse));
+    }
+    assertEquals(expected, read);
+  }
+
+  private BlockMetadata writeBlock(ByteArrayOutputStream out, Schema schema,
+    GenericRecord... records) throws IOException {
+    int start = out.size();
+    DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>());
+    writer.create(schema, out);
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    writer.close();
+    return BlockMetadata.newBuilder().setLength((long) out.size() - start).build();
+  }
+
+  /**
+   * Records for each schema are split across many blocks, by either the number of records or the
+   * sync interval
+   */
+  @Test
+  public void testManyBlocksPerSchema() throws Exception {
+    List<GenericRecord> records = createRandomRecord(50);
+    records.addAll(createRandomRecord(50));
+    records.addAll(createRandomRecord(50));
+    Collections.shuffle(records);
+    GenericRecord[] recordArray = records.toArray(new GenericRecord[0]);
+
+    MultiSchemaFileWriter writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writeAndVerifyRecords(writer.setRecordsPerBlock(7), recordArray);
+
+    writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writeAndVerifyRecords(writer.setSyncInterval(64), recordArray);
+
+    writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writer.setSpillDirectory(folder.newFolder("spill")).setRecordsPerBlock(3);
+    writeAndVerifyRecords(writer.setCodec(CodecFactory.deflateCodec(6)), recordArray);
+  }
+
+  /**
+   * Grouping records into blocks writes less data (each block has its own header and sync marker)
+   * than writing a block for each record.
+   */
+  @Test
+  public void testBlocksSmallerThanRecordPerBlock() throws Exception {
+    List<GenericRecord> records = createRandomRecord(100);
+    records.addAll(createRandomRecord(100));
+    GenericRecord[] recordArray = records.toArray(new GenericRecord[0]);
+
+    MultiSchemaFileWriter writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    byte[] perRecord = writeAndVerifyRecords(writer.setRecordsPerBlock(1), recordArray);
+    writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    byte[] blocks = writeAndVerifyRecords(writer, recordArray);
+    assertTrue("Blocks (" + blocks.length + ") not smaller than a block per record (" +
+               perRecord.length + ")", blocks.length < perRecord.length);
+  }
+
+  /**
+   * Each schema's block is compressed with the codec chosen by the policy
+   */
+  @Test
+  public void testCodecPerSchema() throws Exception {
+    List<GenericRecord> first = createRandomRecord(5);
+    List<GenericRecord> second = createRandomRecord(5);
+    List<GenericRecord> third = createRandomRecord(5);
+    Map<String, CodecFactory> codecs = new HashMap<>();
+    codecs.put(first.get(0).getSchema().getFullName(), CodecFactory.snappyCodec());
+    codecs.put(second.get(0).getSchema().getFullName(), CodecFactory.xzCodec(1));
+    List<GenericRecord> records = new ArrayList<>(first);
+    records.addAll(second);
+    records.addAll(third);
+    Collections.shuffle(records);
+
+    MultiSchemaFileWriter writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writer.setCodecPolicy(MultiSchemaCodecPolicy.perSchema(codecs, CodecFactory.bzip2Codec()));
+    byte[] data = writeAndVerifyRecords(writer, records.toArray(new GenericRecord[0]));
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put(first.get(0).getSchema().getFullName(), DataFileConstants.SNAPPY_CODEC);
+    expected.put(second.get(0).getSchema().getFullName(), DataFileConstants.XZ_CODEC);
+    expected.put(third.get(0).getSchema().getFullName(), DataFileConstants.BZIP2_CODEC);
+    SeekableByteArrayInput input = new SeekableByteArrayInput(data);
+    for (MultiSchemaFooter.BlockLocation block : MultiSchemaFooter.read(input).getBlocks()) {
+      DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(block.slice(input), new GenericDatumReader<>());
+      assertEquals(expected.get(reader.getSchema().getFullName()),
+        reader.getMetaString(DataFileConstants.CODEC));
+    }
+  }
+
+  /**
+   * Spilling each schema to a temporary file should write the same amount of data as buffering
+   * everything in memory (the bytes differ only by the random sync markers), and cleanup the
+   * temporary files when done
+   */
+  @Test
+  public void testSpillToDisk() throws Exception {
+    List<GenericRecord> records = createRandomRecord(5);
+    records.addAll(createRandomRecord(5));
+    Collections.shuffle(records);
+    GenericRecord[] recordArray = records.toArray(new GenericRecord[0]);
+
+    File spill = folder.newFolder("spill");
+    MultiSchemaFileWriter writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writer.setSpillDirectory(spill);
+    byte[] spilled = writeAndVerifyRecords(writer, recordArray);
+    assertEquals("Temporary files not removed", 0, spill.list().length);
+
+    byte[] inMemory = writeAndVerifyRecords(new MultiSchemaFileWriter(new GenericDatumWriter()),
+      recordArray);
+    assertEquals(inMemory.length, spilled.length);
+  }
+
+  @Test
+  public void testWriteToChannel() throws Exception {
+    List<GenericRecord> records = createRandomRecord(3);
+    records.addAll(createRandomRecord(3));
+    GenericRecord[] recordArray = records.toArray(new GenericRecord[0]);
+
+    MultiSchemaFileWriter writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writer.setSpillDirectory(folder.newFolder("spill"));
+    writer.create();
+    for (GenericRecord record : recordArray) {
+      writer.append(record);
+    }
+    File file = folder.newFile("multi.avro");
+    try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+      writer.close(channel);
+    }
+    verifyRecords(Files.readAllBytes(file.toPath()), recordArray);
+  }
+
+  /**
+   * Closing into a buffer writes exactly the file, starting at the buffer's position, so larger
+   * (pooled) and direct buffers can be used
+   */
+  @Test
+  public void testCloseToByteBuffer() throws Exception {
+    List<GenericRecord> records = createRandomRecord(3);
+    records.addAll(createRandomRecord(3));
+    GenericRecord[] recordArray = records.toArray(new GenericRecord[0]);
+
+    // pooled buffer, larger than the file and already partially used
+    ByteBuffer pooled = ByteBuffer.allocate(64 * 1024);
+    pooled.position(10);
+    MultiSchemaFileWriter writer = writeRecords(new MultiSchemaFileWriter(new GenericDatumWriter()),
+      recordArray);
+    int expected = writer.getBytesWritten();
+    ByteBuffer closed = writer.close(length -> pooled);
+    assertSame(pooled, closed);
+    assertEquals(10, closed.position());
+    assertTrue(closed.remaining() > expected);
+    verifyRecords(toBytes(closed), recordArray);
+
+    // direct buffer, sized exactly, from spilled data
+    writer = new MultiSchemaFileWriter(new GenericDatumWriter());
+    writer.setSpillDirectory(folder.newFolder("spill"));
+    closed = writeRecords(writer, recordArray).close(ByteBuffer::allocateDirect);
+    assertTrue(closed.isDirect());
+    assertEquals(closed.capacity(), closed.remaining());
+    verifyRecords(toBytes(closed), recordArray);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCloseToBufferTooSmall() throws Exception {
+    MultiSchemaFileWriter writer = writeRecords(new MultiSchemaFileWriter(new GenericDatumWriter()),
+      createRandomRecord());
+    writer.close(length -> ByteBuffer.allocate(length - 1));
+  }
+
+  /**
+   * Closing releases the buffered data, so a closed writer cannot be closed again
+   */
+  @Test
+  public void testCloseTwice() throws Exception {
+    GenericRecord record = createRandomRecord();
+    MultiSchemaFileWriter writer = writeRecords(new MultiSchemaFileWriter(new GenericDatumWriter()),
+      record);
+    verifyRecords(writer.close(), record);
+    try {
+      writer.close();
+      fail("Closed the writer twice");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      writer.close(Channels.newChannel(new ByteArrayOutputStream()));
+      fail("Closed the writer to a channel after it was already closed");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Records that were already encoded are written as-is and indexed by the timestamp they were
+   * appended with
+   */
+  @Test
+  public void testAppendEncoded() throws Exception {
+    List<GenericRecord> records = createRandomRecord(5);
+    records.addAll(createRandomRecord(5));
+    Collections.shuffle(records);
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.setRecordsPerBlock(2);
+    writer.create();
+    GenericDatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryEncoder enc = null;
+    Map<String, Long> minTimestamps = new HashMap<>();
+    for (int i = 0; i < records.size(); i++) {
+      GenericRecord record = records.get(i);
+      bytes.reset();
+      enc = EncoderFactory.get().binaryEncoder(bytes, enc);
+      datumWriter.setSchema(record.getSchema());
+      datumWriter.write(record, enc);
+      enc.flush();
+      minTimestamps.putIfAbsent(record.getSchema().getFullName(), (long) i);
+      writer.appendEncoded(record.getSchema(), ByteBuffer.wrap(bytes.toByteArray()), i);
+    }
+    byte[] data = writer.close();
+    verifyRecords(data, records.toArray(new GenericRecord[0]));
+
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableByteArrayInput(data));
+    List<BlockMetadata> blocks = reader.getBlockMetadata();
+    assertEquals(2, blocks.size());
+    for (BlockMetadata block : blocks) {
+      assertEquals(5, (long) block.getRecordCount());
+      assertEquals(minTimestamps.get(block.getFullName()), block.getMinTimestamp());
+    }
+  }
+
+  private MultiSchemaFileWriter writeRecords(MultiSchemaFileWriter writer,
+    GenericRecord... records) throws IOException {
+    writer.create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    return writer;
+  }
+
+  private byte[] toBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
 
   private void writeAndVerifyRecordsAndCodec(GenericRecord... records)
     throws IOException {
@@ -108,9 +534,9 @@ public class TestMultiSchemaReadWrite {
     MultiSchemaFileWriter writer = new MultiSchemaFileWriter(datumWriter);
     writeAndVerifyRecords(writer, records);
 
-//    writer = new MultiSchemaFileWriter(datumWriter);
-//    writer.setCodec(CodecFactory.bzip2Codec());
-//    writeAndVerifyRecords(writer, records);
+    writer = new MultiSchemaFileWriter(datumWriter);
+    writer.setCodec(CodecFactory.bzip2Codec());
+    writeAndVerifyRecords(writer, records);
   }
 
   /**
@@ -120,7 +546,7 @@ public class TestMultiSchemaReadWrite {
    * @param records
    * @throws IOException
    */
-  private void writeAndVerifyRecords(MultiSchemaFileWriter writer, GenericRecord... records)
+  private byte[] writeAndVerifyRecords(MultiSchemaFileWriter writer, GenericRecord... records)
     throws IOException {
     writer.create();
     for (GenericRecord record : records) {
@@ -128,7 +554,11 @@ public class TestMultiSchemaReadWrite {
       writer.append(record);
     }
     byte[] data = writer.close();
+    verifyRecords(data, records);
+    return data;
+  }
 
+  private void verifyRecords(byte[] data, GenericRecord... records) throws IOException {
     // read back in the record
     SeekableByteArrayInput is = new SeekableByteArrayInput(data);
     MultiSchemaFileReader<GenericRecord> reader = new MultiSchemaFileReader(is);
@@ -148,11 +578,11 @@ public class TestMultiSchemaReadWrite {
    * @return a record with a unique schema
    * @throws IOException
    */
-  private GenericRecord createRandomRecord() throws IOException {
+  private static GenericRecord createRandomRecord() throws IOException {
     return createRandomRecord(1).get(0);
   }
 
-  private List<GenericRecord> createRandomRecord(int count) throws IOException {
+  static List<GenericRecord> createRandomRecord(int count) throws IOException {
     List<GenericRecord> records = new ArrayList<>(count);
     AvroSchemaInstanceBuilder builder = new AvroSchemaInstanceBuilder();
     // create a randomish name
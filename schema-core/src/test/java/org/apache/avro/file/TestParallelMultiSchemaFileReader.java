@@ -0,0 +1,143 @@
+package org.apache.avro.file;
+
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestParallelMultiSchemaFileReader {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+  @After
+  public void shutdown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    List<GenericRecord> records = createRecords();
+    SeekableInputSource source = SeekableInputSource.forBytes(write(records));
+    ParallelMultiSchemaFileReader<GenericRecord> reader = new ParallelMultiSchemaFileReader<>(source);
+    assertEquals(4, reader.getSchemaCount());
+    verify(records, reader.stream().collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testSchemaIterators() throws Exception {
+    List<GenericRecord> records = createRecords();
+    File file = folder.newFile("multi.avro");
+    try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+      MultiSchemaFileWriter<GenericRecord> writer = createWriter(records);
+      writer.close(channel);
+    }
+
+    ParallelMultiSchemaFileReader<GenericRecord> reader =
+      new ParallelMultiSchemaFileReader<>(SeekableInputSource.forFile(file));
+    List<GenericRecord> read = new ArrayList<>();
+    for (ParallelMultiSchemaFileReader.SchemaIterator<GenericRecord> iter : reader
+      .getSchemaIterators()) {
+      List<GenericRecord> schemaRecords = new ArrayList<>();
+      iter.forEachRemaining(schemaRecords::add);
+      assertFalse("Iterator not exhausted", iter.hasNext());
+      // records for each schema stay in the order they were written
+      List<GenericRecord> expected = records.stream()
+                                            .filter(r -> r.getSchema().equals(iter.getSchema()))
+                                            .collect(Collectors.toList());
+      assertEquals(expected, schemaRecords);
+      read.addAll(schemaRecords);
+    }
+    verify(records, read);
+  }
+
+  @Test
+  public void testMappedFile() throws Exception {
+    List<GenericRecord> records = createRecords();
+    File file = folder.newFile("multi.avro");
+    Files.write(file.toPath(), write(records));
+    ParallelMultiSchemaFileReader<GenericRecord> reader =
+      new ParallelMultiSchemaFileReader<>(SeekableInputSource.forMappedFile(file));
+    verify(records, reader.stream().collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testForEachOnExecutor() throws Exception {
+    List<GenericRecord> records = createRecords();
+    ParallelMultiSchemaFileReader<GenericRecord> reader =
+      new ParallelMultiSchemaFileReader<>(SeekableInputSource.forBytes(write(records)));
+    ConcurrentLinkedQueue<GenericRecord> read = new ConcurrentLinkedQueue<>();
+    reader.forEach(read::add, executor).get();
+    verify(records, new ArrayList<>(read));
+  }
+
+  @Test
+  public void testConsumerFailureFailsRead() throws Exception {
+    List<GenericRecord> records = createRecords();
+    ParallelMultiSchemaFileReader<GenericRecord> reader =
+      new ParallelMultiSchemaFileReader<>(SeekableInputSource.forBytes(write(records)));
+    try {
+      reader.forEach(record -> {
+        throw new IllegalStateException("Injected failure");
+      }, executor).get();
+      fail("Read should have failed");
+    } catch (ExecutionException e) {
+      assertTrue("Wrong cause: " + e.getCause(), e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  private List<GenericRecord> createRecords() throws IOException {
+    List<GenericRecord> records = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      records.addAll(TestMultiSchemaReadWrite.createRandomRecord(25));
+    }
+    Collections.shuffle(records);
+    return records;
+  }
+
+  private byte[] write(List<GenericRecord> records) throws IOException {
+    return createWriter(records).close();
+  }
+
+  private MultiSchemaFileWriter<GenericRecord> createWriter(List<GenericRecord> records)
+    throws IOException {
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.setRecordsPerBlock(10).create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    return writer;
+  }
+
+  private void verify(List<GenericRecord> expected, List<GenericRecord> actual) {
+    assertEquals(expected.size(), actual.size());
+    List<GenericRecord> remaining = new ArrayList<>(expected);
+    for (GenericRecord record : actual) {
+      assertTrue("Unexpected record: " + record, remaining.remove(record));
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.apache.avro.file;
+
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestSeekableMappedFileInput {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReadAcrossSegments() throws Exception {
+    byte[] data = data(100);
+    SeekableMappedFileInput input = new SeekableMappedFileInput(write(data), 7);
+    assertEquals(100, input.length());
+
+    byte[] read = new byte[100];
+    assertEquals(100, input.read(read, 0, read.length));
+    assertArrayEquals(data, read);
+    assertEquals(-1, input.read(read, 0, 1));
+
+    input.seek(5);
+    byte[] span = new byte[10];
+    assertEquals(10, input.read(span, 0, span.length));
+    assertEquals(15, input.tell());
+    for (int i = 0; i < span.length; i++) {
+      assertEquals(data[i + 5], span[i]);
+    }
+
+    // seeking past the end is allowed, but there is nothing to read
+    input.seek(200);
+    assertEquals(-1, input.read(span, 0, 1));
+  }
+
+  @Test
+  public void testSlicesAreIndependent() throws Exception {
+    byte[] data = data(64);
+    SeekableMappedFileInput input = new SeekableMappedFileInput(write(data), 10);
+    SeekableMappedFileInput first = input.slice(8, 16);
+    SeekableMappedFileInput second = first.slice(4, 4);
+    assertEquals(16, first.length());
+    assertEquals(4, second.length());
+
+    byte[] b = new byte[1];
+    first.read(b, 0, 1);
+    assertEquals(8, b[0]);
+    second.read(b, 0, 1);
+    assertEquals(12, b[0]);
+    first.read(b, 0, 1);
+    assertEquals(9, b[0]);
+    assertEquals(0, input.tell());
+
+    // reads stop at the end of the slice
+    byte[] rest = new byte[10];
+    assertEquals(3, second.read(rest, 0, rest.length));
+    assertEquals(-1, second.read(rest, 0, rest.length));
+  }
+
+  /**
+   * A closed input drops the mapping, but slices taken before are independent
+   */
+  @Test
+  public void testClose() throws Exception {
+    SeekableMappedFileInput input = new SeekableMappedFileInput(write(data(16)), 10);
+    SeekableMappedFileInput slice = input.slice(4, 8);
+    input.close();
+    try {
+      input.read(new byte[1], 0, 1);
+      fail("Expected closed input to not be readable");
+    } catch (IOException e) {
+      // expected
+    }
+    byte[] b = new byte[1];
+    assertEquals(1, slice.read(b, 0, 1));
+    assertEquals(4, b[0]);
+    slice.close();
+    // closing again is fine
+    slice.close();
+  }
+
+  /**
+   * Read a multi-schema file with mapping segments that split the magic, footer and blocks
+   */
+  @Test
+  public void testReadMultiSchemaFile() throws Exception {
+    List<GenericRecord> records = TestMultiSchemaReadWrite.createRandomRecord(10);
+    records.addAll(TestMultiSchemaReadWrite.createRandomRecord(10));
+    MultiSchemaFileWriter<GenericRecord> writer =
+      new MultiSchemaFileWriter<>(new GenericDatumWriter<>());
+    writer.setRecordsPerBlock(3).create();
+    for (GenericRecord record : records) {
+      writer.append(record);
+    }
+    File file = write(writer.close());
+
+    MultiSchemaFileReader<GenericRecord> reader =
+      new MultiSchemaFileReader<>(new SeekableMappedFileInput(file, 3));
+    List<GenericRecord> remaining = new ArrayList<>(records);
+    GenericRecord next;
+    while ((next = reader.next()) != null) {
+      assertTrue("Unexpected record: " + next, remaining.remove(next));
+    }
+    assertEquals(new ArrayList<>(), remaining);
+  }
+
+  private File write(byte[] data) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  private byte[] data(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+}
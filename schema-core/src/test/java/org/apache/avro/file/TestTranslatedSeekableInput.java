@@ -1,14 +1,21 @@
 package org.apache.avro.file;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 public class TestTranslatedSeekableInput {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void testSeekableByteArray() throws Exception {
     test(new SeekableByteArrayInput(data()));
@@ -19,6 +26,15 @@ public class TestTranslatedSeekableInput {
     test(new SeekableByteBufferInput(ByteBuffer.wrap(data())));
   }
 
+  @Test
+  public void testMappedFile() throws Exception {
+    File file = folder.newFile();
+    Files.write(file.toPath(), data());
+    test(new SeekableMappedFileInput(file));
+    // small segments so reads cross segments
+    test(new SeekableMappedFileInput(file, 3));
+  }
+
   private byte[] data() {
     byte[] data = new byte[128];
     for (byte i = 0; i < 127; i++) {
@@ -3,6 +3,8 @@ package io.fineo.lambda.handle.schema.inject;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import io.fineo.schema.aws.dynamodb.BatchReadRepository;
+import io.fineo.schema.aws.dynamodb.CachingBatchReadRepository;
 import org.schemarepo.CacheRepository;
 import org.schemarepo.InMemoryCache;
 import org.schemarepo.Repository;
@@ -10,7 +12,7 @@ import org.schemarepo.ValidatorFactory;
 
 /**
  * Wrapper around the {@link DynamoDBRepositoryProvider} that provides a cached version of the
- * schema repository
+ * schema repository, which can still read many subjects in a single batch
  */
 public class CachingDynamoDBRepositoryProvider extends DynamoDBRepositoryProvider {
 
@@ -24,6 +26,8 @@ public class CachingDynamoDBRepositoryProvider extends DynamoDBRepositoryProvide
   @Override
   public Repository get() {
     Repository repository = super.get();
-    return new CacheRepository(repository, new InMemoryCache());
+    return repository instanceof BatchReadRepository ?
+           new CachingBatchReadRepository((BatchReadRepository) repository, new InMemoryCache()) :
+           new CacheRepository(repository, new InMemoryCache());
   }
 }
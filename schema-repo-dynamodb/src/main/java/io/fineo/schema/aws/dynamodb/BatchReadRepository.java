@@ -0,0 +1,22 @@
+package io.fineo.schema.aws.dynamodb;
+
+import org.schemarepo.Repository;
+import org.schemarepo.SchemaEntry;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link Repository} that can read the latest schema of many subjects at once, rather than
+ * looking up each subject in turn. Repositories that wrap a batch repository (e.g.
+ * {@link CachingBatchReadRepository}) should also implement this, so the batch read is not lost.
+ */
+public interface BatchReadRepository extends Repository {
+
+  /**
+   * @param subjectNames names of the subjects to read
+   * @return the latest schema for each subject, or <tt>null</tt> if the subject has no schemas.
+   * Subjects that do not exist are not included.
+   */
+  Map<String, SchemaEntry> getLatestSchemas(Collection<String> subjectNames);
+}
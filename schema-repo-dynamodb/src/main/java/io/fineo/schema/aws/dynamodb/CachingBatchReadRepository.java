@@ -0,0 +1,28 @@
+package io.fineo.schema.aws.dynamodb;
+
+import org.schemarepo.CacheRepository;
+import org.schemarepo.RepositoryCache;
+import org.schemarepo.SchemaEntry;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link CacheRepository} over a {@link BatchReadRepository} that still supports batch reads.
+ * Like the latest schema of a looked up subject, batch reads always go to the underlying
+ * repository.
+ */
+public class CachingBatchReadRepository extends CacheRepository implements BatchReadRepository {
+
+  private final BatchReadRepository delegate;
+
+  public CachingBatchReadRepository(BatchReadRepository repo, RepositoryCache cache) {
+    super(repo, cache);
+    this.delegate = repo;
+  }
+
+  @Override
+  public Map<String, SchemaEntry> getLatestSchemas(Collection<String> subjectNames) {
+    return delegate.getLatestSchemas(subjectNames);
+  }
+}
@@ -1,17 +1,24 @@
 package io.fineo.schema.aws.dynamodb;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.google.common.collect.Iterables;
 import org.schemarepo.AbstractBackendRepository;
 import org.schemarepo.Repository;
 import org.schemarepo.RepositoryUtil;
@@ -23,12 +30,16 @@ import org.schemarepo.ValidatorFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link Repository} that stores data in DynamoDB
@@ -49,10 +60,24 @@ import java.util.Set;
  * <li></li>
  * </ol>
  * </p>
+ * <p>
+ * Schema rows can store the subject's schemas in one of two layouts:
+ * <ol>
+ * <li>all the schemas, as a list in {@value #SCHEMAS_COLUMN} in the subject row</li>
+ * <li>just the latest schema ({@value #LATEST_COLUMN}) and the number of schemas
+ * ({@value #SCHEMA_COUNT_COLUMN}) in the subject row. Each of the older schemas is in its own
+ * row, with an id-sort of <tt>[id]_v_[index]</tt>, and is only read when it is specifically
+ * requested. This keeps the subject row small, no matter how many schemas are added.</li>
+ * </ol>
+ * Either layout can be read, but older versions of the repository can only read the first. Only
+ * once all the readers have been upgraded should the repository be created with
+ * <tt>splitHistory</tt> enabled. Existing subjects then move to the split layout the next time
+ * they are written, or can be moved explicitly with {@link #migrateSubject(String)}.
+ * </p>
  */
 //TODO support client-side encryption http://java.awsblog
 // .com/post/TxI32GE4IG2SNS/Client-side-Encryption-for-Amazon-DynamoDB
-public class DynamoDBRepository extends AbstractBackendRepository {
+public class DynamoDBRepository extends AbstractBackendRepository implements BatchReadRepository {
 
   private static final Logger LOG = LoggerFactory.getLogger(DynamoDBRepository.class);
 
@@ -62,15 +87,36 @@ public class DynamoDBRepository extends AbstractBackendRepository {
   public static final String CONFIG_COLUMN = "configs";
   public static final String VERSION_COLUMN = "version";
   public static final String SCHEMAS_COLUMN = "schemas";
+  public static final String LATEST_COLUMN = "latest";
+  public static final String SCHEMA_COUNT_COLUMN = "schema_count";
+  public static final String SCHEMA_COLUMN = "schema";
+  private static final String HISTORY_SEPARATOR = "_v_";
+  // max number of keys DynamoDB allows in a single BatchGetItem
+  static final int BATCH_GET_LIMIT = 100;
+  private static final long MAX_BATCH_BACKOFF_MILLIS = 1000;
+  // max number of requests for each batch, before we give up on any keys still unprocessed
+  static final int MAX_BATCH_ATTEMPTS = 8;
 
   private final DynamoDB dynamo;
   private final Table table;
   private final AmazonDynamoDB client;
   private final DynamoDBMapper mapper;
+  private final boolean splitHistory;
+  private volatile long maxStalenessMillis = 0;
 
   public DynamoDBRepository(ValidatorFactory validators, AmazonDynamoDB dynamoDB,
     String tablename) {
+    this(validators, dynamoDB, tablename, false);
+  }
+
+  /**
+   * @param splitHistory if <tt>true</tt>, only the latest schema is stored in the subject row and
+   *                     older schemas are written to their own rows. See the class docs.
+   */
+  public DynamoDBRepository(ValidatorFactory validators, AmazonDynamoDB dynamoDB,
+    String tablename, boolean splitHistory) {
     super(validators);
+    this.splitHistory = splitHistory;
     this.client = dynamoDB;
     this.dynamo = new DynamoDB(dynamoDB);
     // this doesn't actually do anything besides set a reference to the table. It may not exist,
@@ -93,7 +139,8 @@ public class DynamoDBRepository extends AbstractBackendRepository {
     SubjectSchema schema = new SubjectSchema()
       .setSubject(subjectName)
       .setRangeKey(subjectName)
-      .setConfigs(RepositoryUtil.safeConfig(config).asMap());
+      .setConfigs(RepositoryUtil.safeConfig(config).asMap())
+      .setSchemaCount(splitHistory ? 0 : null);
     try {
       LOG.debug("Saving subject: {}", subjectName);
       mapper.save(schema);
@@ -117,6 +164,109 @@ public class DynamoDBRepository extends AbstractBackendRepository {
     return exists;
   }
 
+  /**
+   * Allow subjects to answer reads (e.g. {@link Subject#latest()}) from the last state they read,
+   * without checking the table, for up to the specified amount of time. Registering a schema
+   * always checks the table first. Defaults to <tt>0</tt>, which checks on every read.
+   *
+   * @param maxStaleness max time for which a subject may be stale
+   * @param unit         unit of the max staleness
+   */
+  public void setMaxStaleness(long maxStaleness, TimeUnit unit) {
+    this.maxStalenessMillis = unit.toMillis(maxStaleness);
+  }
+
+  /**
+   * Get the latest schema for many subjects at once, reading up to {@value #BATCH_GET_LIMIT}
+   * subject rows per request, rather than looking up each subject in turn. Keys that DynamoDB
+   * does not process (e.g. when the table is throttled) are retried with a backoff, up to
+   * {@value #MAX_BATCH_ATTEMPTS} requests per batch.
+   *
+   * @param subjectNames names of the subjects to read
+   * @return the latest schema for each subject, or <tt>null</tt> if the subject has no schemas.
+   * Subjects that do not exist are not included.
+   * @throws AmazonClientException if some subjects are still unprocessed after the max attempts
+   */
+  @Override
+  public Map<String, SchemaEntry> getLatestSchemas(Collection<String> subjectNames) {
+    Map<String, SchemaEntry> latest = new HashMap<>();
+    String tableName = table.getTableName();
+    for (List<String> chunk : Iterables
+      .partition(new LinkedHashSet<>(subjectNames), BATCH_GET_LIMIT)) {
+      TableKeysAndAttributes keys = new TableKeysAndAttributes(tableName)
+        .withConsistentRead(true)
+        .withAttributeNames(PARTITION_KEY, SCHEMAS_COLUMN, LATEST_COLUMN, SCHEMA_COUNT_COLUMN);
+      for (String subject : chunk) {
+        keys.addHashAndRangePrimaryKey(PARTITION_KEY, subject, SORT_KEY, subject);
+      }
+      LOG.debug("Batch reading {} subjects", chunk.size());
+      BatchGetItemOutcome outcome = dynamo.batchGetItem(keys);
+      long backoff = 10;
+      int attempts = 1;
+      while (true) {
+        List<Item> items = outcome.getTableItems().get(tableName);
+        if (items != null) {
+          for (Item item : items) {
+            latest.put(item.getString(PARTITION_KEY), getLatest(item));
+          }
+        }
+        Map<String, KeysAndAttributes> unprocessed = outcome.getUnprocessedKeys();
+        if (unprocessed == null || unprocessed.isEmpty()) {
+          break;
+        }
+        int remaining = unprocessed.get(tableName).getKeys().size();
+        if (attempts >= MAX_BATCH_ATTEMPTS) {
+          throw new AmazonClientException(
+            "Could not read " + remaining + " subjects after " + attempts + " attempts");
+        }
+        LOG.debug("Retrying {} unprocessed subjects", remaining);
+        backoff(backoff);
+        backoff = Math.min(backoff * 2, MAX_BATCH_BACKOFF_MILLIS);
+        outcome = dynamo.batchGetItemUnprocessed(unprocessed);
+        attempts++;
+      }
+    }
+    return latest;
+  }
+
+  private SchemaEntry getLatest(Item subject) {
+    int count;
+    String schema;
+    if (subject.isPresent(SCHEMA_COUNT_COLUMN)) {
+      count = subject.getInt(SCHEMA_COUNT_COLUMN);
+      schema = subject.getString(LATEST_COLUMN);
+    } else {
+      List<String> schemas = subject.getList(SCHEMAS_COLUMN);
+      count = schemas == null ? 0 : schemas.size();
+      schema = count == 0 ? null : schemas.get(count - 1);
+    }
+    return count == 0 ? null : new SchemaEntry(String.valueOf(count - 1), schema);
+  }
+
+  private void backoff(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting to retry batch read", e);
+    }
+  }
+
+  /**
+   * Move the schemas of a subject stored with all its schemas in the subject row to the split
+   * layout, where each older schema is in its own row. See the class docs.
+   *
+   * @param subjectName subject to migrate
+   * @return <tt>true</tt> if the subject was migrated, <tt>false</tt> if the subject does not
+   * exist or was already using the split layout
+   */
+  public boolean migrateSubject(String subjectName) {
+    if (!checkSubjectExistsInBackend(subjectName)) {
+      return false;
+    }
+    return new DynamoSubject(subjectName).migrate();
+  }
+
   /**
    * Add a dynamic column to potentially be considered as part of the schema the next time we do
    * a schema change
@@ -179,57 +329,129 @@ public class DynamoDBRepository extends AbstractBackendRepository {
     return subjectname + "_ext";
   }
 
+  private KeyAttribute[] getHistoryPK(String subject, int index) {
+    return getPK(subject, getHistoryPrefix(subject) + index);
+  }
+
+  private String getHistoryPrefix(String subjectname) {
+    return subjectname + HISTORY_SEPARATOR;
+  }
+
   /**
-   * It is expected that the user will wrap this in a cache, so we don't do any explicit caching.
+   * The subject keeps the last state of the subject row that it read, along with its version.
+   * Before using that state, it reads just the version of the row and only reloads the whole row
+   * if the version has changed. Note that DynamoDB still charges reads based on the size of the
+   * whole row; a projection only saves the transfer and parsing. To save the read entirely,
+   * reads can also use the last state for a while, see {@link #setMaxStaleness(long, TimeUnit)}.
+   * <p>
+   * Otherwise, it is expected that the user will wrap this in a cache, so we don't do any other
+   * explicit caching.
+   * </p>
+   * <p>
+   * Subjects are shared by all users of the repository, so access to the state is synchronized.
+   * </p>
    */
   private class DynamoSubject extends Subject {
     private SubjectSchema subject;
+    private long loadedAt;
 
     public DynamoSubject(String subjectName) {
       super(subjectName);
     }
 
+    /**
+     * Ensure we have a recent state of the subject, for reading
+     */
     private void reload() {
+      reload(maxStalenessMillis);
+    }
+
+    /**
+     * Ensure we have the current state of the subject, for writing
+     */
+    private void reloadLatest() {
+      reload(0);
+    }
+
+    private void reload(long maxStalenessMillis) {
+      long now = System.currentTimeMillis();
+      if (subject != null) {
+        if (maxStalenessMillis > 0 && now - loadedAt < maxStalenessMillis) {
+          return;
+        }
+        Integer version = loadVersion();
+        if (version != null && version.equals(subject.getVersion())) {
+          LOG.trace("Subject {} still at version {}", getName(), version);
+          this.loadedAt = now;
+          return;
+        }
+      }
       LOG.debug("Reloading subject {}", getName());
       this.subject = mapper.load(SubjectSchema.class, getName(), getName());
+      this.loadedAt = now;
       LOG.debug("-->Reloaded subject {}", getName());
     }
 
+    private Integer loadVersion() {
+      GetItemSpec spec = new GetItemSpec()
+        .withPrimaryKey(getPK(getName()))
+        .withConsistentRead(true)
+        .withProjectionExpression("#v")
+        .withNameMap(new NameMap().with("#v", VERSION_COLUMN));
+      Item item = table.getItem(spec);
+      return item == null || !item.isPresent(VERSION_COLUMN) ? null : item.getInt(VERSION_COLUMN);
+    }
+
+    /**
+     * Save the current state of the subject. If the save fails for any reason (the subject was
+     * changed by someone else, throttling, a timeout...), we drop the state, so it is reloaded
+     * next time. We have already modified the state, but the mapper only bumps its version once
+     * the save succeeds, so otherwise the unsaved changes would look current.
+     */
+    private void save() {
+      try {
+        mapper.save(subject);
+      } catch (RuntimeException e) {
+        this.subject = null;
+        throw e;
+      }
+    }
+
     @Override
     public boolean integralKeys() {
       return true;
     }
 
     @Override
-    public SubjectConfig getConfig() {
+    public synchronized SubjectConfig getConfig() {
       reload();
       return new SubjectConfig.Builder().set(this.subject.getConfigs()).build();
     }
 
 
     @Override
-    public SchemaEntry register(String schema) throws SchemaValidationException {
+    public synchronized SchemaEntry register(String schema) throws SchemaValidationException {
       RepositoryUtil.validateSchemaOrSubject(schema);
       //get the latest state and check that it hasn't been added by someone else
-      reload();
-      List<String> schemas = this.subject.getSchemas();
-      if (schemas.contains(schema)) {
-        return asEntry(schemas.indexOf(schema), schema);
+      reloadLatest();
+      SchemaEntry existing = find(schema);
+      if (existing != null) {
+        return existing;
       }
       try {
-        return write(schemas.size(), schema);
+        return write(size(), schema);
       } catch (ConditionalCheckFailedException e) {
         return register(schema);
       }
     }
 
     @Override
-    public SchemaEntry registerIfLatest(String schema, SchemaEntry latest)
+    public synchronized SchemaEntry registerIfLatest(String schema, SchemaEntry latest)
       throws SchemaValidationException {
       RepositoryUtil.validateSchemaOrSubject(schema);
-      reload();
+      reloadLatest();
       if (latest == null)
-        if (this.subject.getSchemas().size() == 0) {
+        if (size() == 0) {
           return write(0, schema);
         } else {
           return null;
@@ -245,13 +467,12 @@ public class DynamoDBRepository extends AbstractBackendRepository {
       } catch (NumberFormatException e) {
         return null;
       }
-      if (!(id == subject.getSchemas().size() - 1) || !subject.getSchemas().get(id)
-                                                              .equals(latest.getSchema())) {
+      if (!(id == size() - 1) || !getSchema(id).equals(latest.getSchema())) {
         return null;
       }
 
       try {
-        return write(subject.getSchemas().size(), schema);
+        return write(size(), schema);
       } catch (ConditionalCheckFailedException e) {
         // the schema is old, reload and try again
         return registerIfLatest(schema, latest);
@@ -259,27 +480,148 @@ public class DynamoDBRepository extends AbstractBackendRepository {
     }
 
     private SchemaEntry write(int index, String schema) {
-      subject.getSchemas().add(schema);
-      mapper.save(subject);
+      // once split, a subject stays split, even if we wouldn't split it ourselves
+      if (splitHistory || isSplit()) {
+        moveToHistory();
+        subject.setLatest(schema).setSchemaCount(index + 1);
+      } else {
+        subject.getSchemas().add(schema);
+      }
+      save();
       return asEntry(index, schema);
     }
 
+    /**
+     * Write each schema currently stored in the subject row to its own row. These rows are
+     * written before the subject row is updated; they never change once written, so its safe to
+     * write them again if the subject update fails.
+     */
+    private void moveToHistory() {
+      if (isSplit()) {
+        if (size() > 0) {
+          writeHistory(size() - 1, subject.getLatest());
+        }
+        return;
+      }
+
+      List<String> schemas = subject.getSchemas();
+      for (int i = 0; i < schemas.size(); i++) {
+        writeHistory(i, schemas.get(i));
+      }
+      subject.setSchemas(null);
+    }
+
+    private synchronized boolean migrate() {
+      reloadLatest();
+      if (isSplit()) {
+        return false;
+      }
+      List<String> schemas = subject.getSchemas();
+      int count = schemas.size();
+      for (int i = 0; i < count - 1; i++) {
+        writeHistory(i, schemas.get(i));
+      }
+      subject.setLatest(count == 0 ? null : schemas.get(count - 1))
+             .setSchemaCount(count)
+             .setSchemas(null);
+      try {
+        save();
+      } catch (ConditionalCheckFailedException e) {
+        return migrate();
+      }
+      return true;
+    }
+
+    private void writeHistory(int index, String schema) {
+      table.putItem(new Item().withPrimaryKey(new PrimaryKey(getHistoryPK(getName(), index)))
+                              .withString(SCHEMA_COLUMN, schema));
+    }
+
+    private boolean isSplit() {
+      return subject.getSchemaCount() != null;
+    }
+
+    private int size() {
+      return isSplit() ? subject.getSchemaCount() : subject.getSchemas().size();
+    }
+
+    /**
+     * @param index index of the schema, must be less than {@link #size()}
+     * @return the schema, only reading it from its own row if its not the latest schema
+     */
+    private String getSchema(int index) {
+      if (!isSplit()) {
+        return subject.getSchemas().get(index);
+      }
+      if (index == size() - 1) {
+        return subject.getLatest();
+      }
+      GetItemSpec spec = new GetItemSpec()
+        .withPrimaryKey(getHistoryPK(getName(), index))
+        .withConsistentRead(true);
+      Item item = table.getItem(spec);
+      return item == null ? null : item.getString(SCHEMA_COLUMN);
+    }
+
+    /**
+     * @return all the schemas, oldest first
+     */
+    private List<String> getSchemas() {
+      if (!isSplit()) {
+        return subject.getSchemas();
+      }
+
+      String[] schemas = new String[size()];
+      if (schemas.length == 0) {
+        return Collections.emptyList();
+      }
+      schemas[schemas.length - 1] = subject.getLatest();
+      String prefix = getHistoryPrefix(getName());
+      QuerySpec spec = new QuerySpec()
+        .withConsistentRead(true)
+        .withKeyConditionExpression("#p = :p and begins_with(#s, :prefix)")
+        .withNameMap(new NameMap()
+          .with("#p", PARTITION_KEY)
+          .with("#s", SORT_KEY))
+        .withValueMap(new ValueMap()
+          .withString(":p", getName())
+          .withString(":prefix", prefix));
+      for (Item item : table.query(spec)) {
+        int index = Integer.parseInt(item.getString(SORT_KEY).substring(prefix.length()));
+        // the latest schema may also have been written to its own row by a failed update
+        if (index < schemas.length - 1) {
+          schemas[index] = item.getString(SCHEMA_COLUMN);
+        }
+      }
+      return Arrays.asList(schemas);
+    }
+
+    private SchemaEntry find(String schema) {
+      if (size() == 0) {
+        return null;
+      }
+      // most likely to be looking for the latest schema, which we already have
+      int latest = size() - 1;
+      if (isSplit() && subject.getLatest().equals(schema)) {
+        return asEntry(latest, schema);
+      }
+      List<String> schemas = getSchemas();
+      int index = schemas.indexOf(schema);
+      return index < 0 ? null : asEntry(index, schema);
+    }
+
     private SchemaEntry asEntry(int index, String schema) {
       return new SchemaEntry(String.valueOf(index), schema);
     }
 
     @Override
-    public SchemaEntry lookupBySchema(String schema) {
+    public synchronized SchemaEntry lookupBySchema(String schema) {
       reload();
-      List<String> schemas = subject.getSchemas();
-      if (!schemas.contains(schema)) {
-        return null;
-      }
-      return asEntry(schemas, schemas.indexOf(schema));
+      return find(schema);
     }
 
     @Override
-    public SchemaEntry lookupById(String id) {
+    public synchronized SchemaEntry lookupById(String id) {
       reload();
       int index;
       try {
@@ -287,42 +629,31 @@ public class DynamoDBRepository extends AbstractBackendRepository {
       } catch (NumberFormatException e) {
         return null;
       }
-      if (subject.getSchemas().size() - 1 < index) {
+      if (index < 0 || size() - 1 < index) {
         return null;
       }
-      return asEntry(subject.getSchemas(), index);
+      String schema = getSchema(index);
+      return schema == null ? null : asEntry(index, schema);
     }
 
     @Override
-    public SchemaEntry latest() {
+    public synchronized SchemaEntry latest() {
       reload();
-      int size = subject.getSchemas() == null ? -1 : subject.getSchemas().size() - 1;
-      return asEntry(subject.getSchemas(), size);
+      int size = size();
+      return size == 0 ? null : asEntry(size - 1, getSchema(size - 1));
     }
 
 
     @Override
-    public Iterable<SchemaEntry> allEntries() {
+    public synchronized Iterable<SchemaEntry> allEntries() {
       reload();
       List<SchemaEntry> entries = new LinkedList<>();
-      for (int i = 0; i < subject.getSchemas().size(); i++) {
-        entries.add(0, asEntry(subject.getSchemas(), i));
+      List<String> schemas = getSchemas();
+      for (int i = 0; i < schemas.size(); i++) {
+        entries.add(0, asEntry(i, schemas.get(i)));
       }
 
       return entries;
     }
-
-    private SchemaEntry asEntry(Collection<String> schemas, int index) {
-      if (schemas == null || index > schemas.size() - 1) {
-        return null;
-      }
-      int i = 0;
-      for (String schema : schemas) {
-        if (i++ == index) {
-          return new SchemaEntry(String.valueOf(index), schema);
-        }
-      }
-      return null;
-    }
   }
 }
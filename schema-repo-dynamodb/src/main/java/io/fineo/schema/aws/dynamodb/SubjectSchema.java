@@ -21,6 +21,8 @@ public class SubjectSchema {
   private Integer version;
   private Map<String, String> configs;
   private List<String> schemas;
+  private String latest;
+  private Integer schemaCount;
 
   @DynamoDBHashKey(attributeName = DynamoDBRepository.PARTITION_KEY)
   public String getSubject() {
@@ -69,4 +71,29 @@ public class SubjectSchema {
     this.schemas = schemas;
     return this;
   }
+
+  /**
+   * @return the latest schema, when the subject history is split across items
+   */
+  @DynamoDBAttribute(attributeName = DynamoDBRepository.LATEST_COLUMN)
+  public String getLatest() {
+    return latest;
+  }
+  public SubjectSchema setLatest(String latest) {
+    this.latest = latest;
+    return this;
+  }
+
+  /**
+   * @return the number of schemas in the subject, when the subject history is split across
+   * items. <tt>null</tt> if all the schemas are stored in this item.
+   */
+  @DynamoDBAttribute(attributeName = DynamoDBRepository.SCHEMA_COUNT_COLUMN)
+  public Integer getSchemaCount() {
+    return schemaCount;
+  }
+  public SubjectSchema setSchemaCount(Integer schemaCount) {
+    this.schemaCount = schemaCount;
+    return this;
+  }
 }
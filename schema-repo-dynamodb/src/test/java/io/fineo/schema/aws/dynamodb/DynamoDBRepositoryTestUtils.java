@@ -24,6 +24,11 @@ public class DynamoDBRepositoryTestUtils {
 
   public static DynamoDBRepository createDynamoForTesting(AmazonDynamoDB dynamodb,
     String schemaTable, ValidatorFactory validators) {
+    return createDynamoForTesting(dynamodb, schemaTable, validators, false);
+  }
+
+  public static DynamoDBRepository createDynamoForTesting(AmazonDynamoDB dynamodb,
+    String schemaTable, ValidatorFactory validators, boolean splitHistory) {
     try {
       dynamodb.describeTable(schemaTable);
     } catch (ResourceNotFoundException e) {
@@ -33,7 +38,7 @@ public class DynamoDBRepositoryTestUtils {
         .withWriteCapacityUnits(5L));
       dynamodb.createTable(create);
     }
-    return new DynamoDBRepository(validators, dynamodb, schemaTable);
+    return new DynamoDBRepository(validators, dynamodb, schemaTable, splitHistory);
   }
 
   /**
@@ -1,16 +1,21 @@
 package io.fineo.schema.aws.dynamodb;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.Request;
 import com.amazonaws.Response;
 import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import javafx.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -21,9 +26,20 @@ public class FaultInjectionHandler extends RequestHandler2 {
     new ArrayList<>();
   private List<Pair<Class<? extends AmazonWebServiceRequest>, CountDownLatch>> tracking =
     new ArrayList<>();
+  private List<Pair<Class<? extends AmazonWebServiceRequest>, AtomicInteger>> failures =
+    new ArrayList<>();
+  private AtomicInteger unprocessedBatchReads = new AtomicInteger();
 
   @Override
   public void beforeRequest(Request<?> request) {
+    for (Pair<Class<? extends AmazonWebServiceRequest>, AtomicInteger> failure : failures) {
+      if (request.getOriginalRequest().getClass().equals(failure.getKey()) &&
+          failure.getValue().getAndDecrement() > 0) {
+        LOG.info("Failing request for: " + failure.getKey());
+        throw new AmazonClientException("Injected failure for: " + failure.getKey());
+      }
+    }
+
     for (Pair<Class<? extends AmazonWebServiceRequest>, CountDownLatch> track : tracking) {
       if (request.getOriginalRequest().getClass().equals(track.getKey())) {
         track.getValue().countDown();
@@ -47,7 +63,15 @@ public class FaultInjectionHandler extends RequestHandler2 {
 
   @Override
   public void afterResponse(Request<?> request, Response<?> response) {
-
+    if (request.getOriginalRequest() instanceof BatchGetItemRequest &&
+        unprocessedBatchReads.getAndDecrement() > 0) {
+      // as if the table was throttled, none of the keys were read
+      LOG.info("Returning batch read keys as unprocessed");
+      BatchGetItemResult result = (BatchGetItemResult) response.getAwsResponse();
+      result.setResponses(new HashMap<>());
+      result.setUnprocessedKeys(((BatchGetItemRequest) request.getOriginalRequest())
+        .getRequestItems());
+    }
   }
 
   @Override
@@ -64,4 +88,12 @@ public class FaultInjectionHandler extends RequestHandler2 {
     CountDownLatch latch) {
     this.tracking.add(new Pair<>(updateItemRequestClass, latch));
   }
+
+  public void addFailure(Class<? extends AmazonWebServiceRequest> requestClass, int count) {
+    this.failures.add(new Pair<>(requestClass, new AtomicInteger(count)));
+  }
+
+  public void addUnprocessedBatchReads(int count) {
+    this.unprocessedBatchReads.set(count);
+  }
 }
@@ -1,9 +1,14 @@
 package io.fineo.schema.aws.dynamodb;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.local.main.ServerRunner;
 import com.amazonaws.services.dynamodbv2.local.server.DynamoDBProxyServer;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import io.fineo.aws.rule.AwsCredentialResource;
 import javafx.util.Pair;
 import org.apache.commons.logging.Log;
@@ -14,6 +19,7 @@ import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.schemarepo.AbstractTestPersistentRepository;
+import org.schemarepo.InMemoryCache;
 import org.schemarepo.Repository;
 import org.schemarepo.SchemaEntry;
 import org.schemarepo.SchemaValidationException;
@@ -22,15 +28,22 @@ import org.schemarepo.SubjectConfig;
 import org.schemarepo.ValidatorFactory;
 
 import java.net.ServerSocket;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Test the {@link DynamoDBRepository} against a local io.fineo.schema.aws.dynamodb instance (no network overhead).
@@ -88,8 +101,13 @@ public class TestDynamoDBRepository extends AbstractTestPersistentRepository<Dyn
   }
 
   private DynamoDBRepository createRepository(AmazonDynamoDBClient client) {
+    return createRepository(client, false);
+  }
+
+  private DynamoDBRepository createRepository(AmazonDynamoDBClient client,
+    boolean splitHistory) {
     return DynamoDBRepositoryTestUtils.createDynamoForTesting(client, testTableName,
-      new ValidatorFactory.Builder().build());
+      new ValidatorFactory.Builder().build(), splitHistory);
   }
 
   @Test
@@ -193,6 +211,176 @@ public class TestDynamoDBRepository extends AbstractTestPersistentRepository<Dyn
     assertSchemasMatch(schemas, subject2);
   }
 
+  /**
+   * Subjects written in the original layout are moved to the split layout when written by a
+   * repository that splits the history, after which any repository can read or write them
+   *
+   * @throws Exception on failure
+   */
+  @Test
+  public void testSplitHistoryOnWrite() throws Exception {
+    String name = "split";
+    Subject legacy = createRepository().register(name, null);
+    List<SchemaEntry> entries = new ArrayList<>();
+    entries.add(legacy.register("s0"));
+    entries.add(legacy.register("s1"));
+
+    Subject split = createRepository(dynamodb, true).lookup(name);
+    assertEntriesMatch(entries, split);
+    entries.add(split.register("s2"));
+    assertEntriesMatch(entries, split);
+    assertEntriesMatch(entries, legacy);
+
+    entries.add(legacy.register("s3"));
+    assertEntriesMatch(entries, split);
+    assertEntriesMatch(entries, legacy);
+    assertEquals(entries.get(2), legacy.register("s2"));
+    assertNull(legacy.registerIfLatest("s4", entries.get(2)));
+    assertEquals(4, Iterables.size(split.allEntries()));
+  }
+
+  @Test
+  public void testMigrateSubject() throws Exception {
+    DynamoDBRepository repo = createRepository();
+    String name = "migrate";
+    Subject subject = repo.register(name, null);
+    List<SchemaEntry> entries = new ArrayList<>();
+    entries.add(subject.register("s0"));
+    entries.add(subject.register("s1"));
+
+    assertTrue(repo.migrateSubject(name));
+    assertFalse(repo.migrateSubject(name));
+    assertFalse(repo.migrateSubject("unknown-subject"));
+    assertEntriesMatch(entries, subject);
+
+    // subject row only has the latest schema
+    Item row = new DynamoDB(dynamodb).getTable(testTableName)
+                                     .getItem(DynamoDBRepository.PARTITION_KEY, name,
+                                       DynamoDBRepository.SORT_KEY, name);
+    assertEquals(2, row.getInt(DynamoDBRepository.SCHEMA_COUNT_COLUMN));
+    assertEquals("s1", row.getString(DynamoDBRepository.LATEST_COLUMN));
+    assertTrue(row.getList(DynamoDBRepository.SCHEMAS_COLUMN).isEmpty());
+  }
+
+  private void assertEntriesMatch(List<SchemaEntry> entries, Subject subject) {
+    assertEquals(entries.get(entries.size() - 1), subject.latest());
+    for (SchemaEntry entry : entries) {
+      assertEquals(entry, subject.lookupById(entry.getId()));
+      assertEquals(entry, subject.lookupBySchema(entry.getSchema()));
+    }
+    assertEquals(Lists.reverse(entries), Lists.newArrayList(subject.allEntries()));
+  }
+
+  @Test
+  public void testStaleReads() throws Exception {
+    String name = "stale";
+    Subject writer = createRepository().register(name, null);
+    SchemaEntry first = writer.register("s0");
+
+    DynamoDBRepository staleRepo = createRepository();
+    staleRepo.setMaxStaleness(1, TimeUnit.HOURS);
+    Subject stale = staleRepo.lookup(name);
+    assertEquals(first, stale.latest());
+
+    // reads are served from the last state, but writes always see the latest
+    SchemaEntry second = writer.register("s1");
+    assertEquals(first, stale.latest());
+    assertNull(stale.registerIfLatest("s2", first));
+    assertEquals(second, stale.latest());
+    SchemaEntry third = stale.registerIfLatest("s2", second);
+    assertEquals(third, writer.latest());
+    assertEquals(third, stale.latest());
+  }
+
+  /**
+   * A save that fails for any reason must not leave the unsaved schema in the subject's state,
+   * where it would look current until someone else changes the subject
+   */
+  @Test
+  public void testFailedSaveIsNotKept() throws Exception {
+    assertFailedSaveIsNotKept("failed", false);
+    assertFailedSaveIsNotKept("failed-split", true);
+  }
+
+  private void assertFailedSaveIsNotKept(String name, boolean splitHistory) throws Exception {
+    FaultInjectionHandler faults = new FaultInjectionHandler();
+    AmazonDynamoDBClient client = createClient();
+    client.addRequestHandler(faults);
+    Subject subject = createRepository(client, splitHistory).register(name, null);
+    List<SchemaEntry> entries = new ArrayList<>();
+    entries.add(subject.register("s0"));
+
+    faults.addFailure(UpdateItemRequest.class, 1);
+    try {
+      subject.register("s1");
+      fail("Expected the subject update to fail");
+    } catch (AmazonClientException e) {
+      // expected
+    }
+    assertNull(subject.lookupBySchema("s1"));
+    assertEntriesMatch(entries, subject);
+    assertEntriesMatch(entries, createRepository().lookup(name));
+
+    // the schema is actually written once the table is available again
+    entries.add(subject.register("s1"));
+    assertEntriesMatch(entries, subject);
+    assertEntriesMatch(entries, createRepository().lookup(name));
+  }
+
+  @Test
+  public void testBatchLatestSchemas() throws Exception {
+    DynamoDBRepository repo = createRepository();
+    DynamoDBRepository split = createRepository(dynamodb, true);
+    // more subjects than fit in a single batch
+    int count = DynamoDBRepository.BATCH_GET_LIMIT + 10;
+    Map<String, SchemaEntry> expected = new HashMap<>();
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String name = "batch" + i;
+      names.add(name);
+      // alternate between layouts
+      Subject subject = (i % 2 == 0 ? repo : split).register(name, null);
+      subject.register("s0");
+      expected.put(name, subject.register(name));
+    }
+    String empty = "empty";
+    repo.register(empty, null);
+    expected.put(empty, null);
+    names.add(empty);
+    names.add("missing");
+
+    assertEquals(expected, repo.getLatestSchemas(names));
+    // still batched when the repository is cached
+    assertEquals(expected,
+      new CachingBatchReadRepository(repo, new InMemoryCache()).getLatestSchemas(names));
+  }
+
+  @Test
+  public void testBatchReadRetriesUnprocessedKeys() throws Exception {
+    FaultInjectionHandler faults = new FaultInjectionHandler();
+    AmazonDynamoDBClient client = createClient();
+    client.addRequestHandler(faults);
+    DynamoDBRepository repo = createRepository(client);
+    String name = "unprocessed";
+    Map<String, SchemaEntry> expected = new HashMap<>();
+    expected.put(name, repo.register(name, null).register("s0"));
+    List<String> names = Lists.newArrayList(name);
+
+    // unprocessed keys are retried
+    faults.addUnprocessedBatchReads(DynamoDBRepository.MAX_BATCH_ATTEMPTS - 1);
+    assertEquals(expected, repo.getLatestSchemas(names));
+
+    // but not forever
+    faults.addUnprocessedBatchReads(DynamoDBRepository.MAX_BATCH_ATTEMPTS);
+    try {
+      repo.getLatestSchemas(names);
+      fail("Expected the batch read to give up on the unprocessed keys");
+    } catch (AmazonClientException e) {
+      // expected
+    }
+    assertEquals(expected, repo.getLatestSchemas(names));
+  }
+
   @Test
   public void testDoubleRegister() throws Exception{
     Repository repo = createRepository();